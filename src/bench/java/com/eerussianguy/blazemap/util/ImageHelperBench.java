@@ -0,0 +1,101 @@
+package com.eerussianguy.blazemap.util;
+
+import com.mojang.blaze3d.platform.NativeImage;
+
+/**
+ * Compares ImageHelper's row transfers with going through getPixelRGBA / setPixelRGBA for every pixel,
+ * on whole regions and on the per-chunk 16x16 transfers of LayerRegionTile.updateTile and Composite.copyTo.
+ * The chunk cases move all 1024 chunks of a region per operation. Run with ./gradlew bench.
+ * Each case is warmed up before it is timed.
+ */
+public class ImageHelperBench {
+    private static final int SIZE = 512;
+    private static final int WARMUP = 50;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        try(NativeImage src = new NativeImage(SIZE, SIZE, true); NativeImage dst = new NativeImage(SIZE, SIZE, true);
+            NativeImage tile = new NativeImage(16, 16, true)) {
+            for(int y = 0; y < SIZE; y++) {
+                for(int x = 0; x < SIZE; x++) {
+                    src.setPixelRGBA(x, y, 0xFF000000 | (y << 9) | x);
+                }
+            }
+            int[] row = new int[SIZE];
+            int[] chunk = new int[256];
+
+            run("copy 512x512, per pixel", () -> {
+                for(int y = 0; y < SIZE; y++) {
+                    for(int x = 0; x < SIZE; x++) {
+                        dst.setPixelRGBA(x, y, src.getPixelRGBA(x, y));
+                    }
+                }
+            });
+            run("copy 512x512, ImageHelper.copyRect", () -> ImageHelper.copyRect(src, 0, 0, dst, 0, 0, SIZE, SIZE));
+            run("read 512 rows, per pixel", () -> {
+                for(int y = 0; y < SIZE; y++) {
+                    for(int x = 0; x < SIZE; x++) {
+                        row[x] = src.getPixelRGBA(x, y);
+                    }
+                }
+            });
+            run("read 512 rows, ImageHelper.readRow", () -> {
+                for(int y = 0; y < SIZE; y++) {
+                    ImageHelper.readRow(src, 0, y, row, 0, SIZE);
+                }
+            });
+
+            // LayerRegionTile.updateTile: a rendered 16x16 chunk tile is read and copied into the region image
+            run("1024 chunks, tile to region, per pixel", () -> {
+                for(int i = 0; i < 1024; i++) {
+                    int cx = (i & 31) << 4, cz = (i >> 5) << 4;
+                    for(int y = 0; y < 16; y++) {
+                        for(int x = 0; x < 16; x++) {
+                            chunk[(y << 4) | x] = tile.getPixelRGBA(x, y);
+                            dst.setPixelRGBA(cx + x, cz + y, chunk[(y << 4) | x]);
+                        }
+                    }
+                }
+            });
+            run("1024 chunks, tile to region, ImageHelper", () -> {
+                for(int i = 0; i < 1024; i++) {
+                    for(int y = 0; y < 16; y++) {
+                        ImageHelper.readRow(tile, 0, y, chunk, y << 4, 16);
+                    }
+                    ImageHelper.copyRect(tile, 0, 0, dst, (i & 31) << 4, (i >> 5) << 4, 16, 16);
+                }
+            });
+
+            // Composite.copyTo: 16 pixel runs of a chunk array written into the map texture
+            run("1024 chunks, array to texture, per pixel", () -> {
+                for(int i = 0; i < 1024; i++) {
+                    int cx = (i & 31) << 4, cz = (i >> 5) << 4;
+                    for(int y = 0; y < 16; y++) {
+                        for(int x = 0; x < 16; x++) {
+                            dst.setPixelRGBA(cx + x, cz + y, chunk[(y << 4) | x]);
+                        }
+                    }
+                }
+            });
+            run("1024 chunks, array to texture, writeRow", () -> {
+                for(int i = 0; i < 1024; i++) {
+                    int cx = (i & 31) << 4, cz = (i >> 5) << 4;
+                    for(int y = 0; y < 16; y++) {
+                        ImageHelper.writeRow(dst, cx, cz + y, chunk, y << 4, 16);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void run(String name, Runnable task) {
+        for(int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        System.out.printf("%-45s %8.1f us/op%n", name, (System.nanoTime() - start) / 1000.0 / ROUNDS);
+    }
+}
@@ -1,22 +1,36 @@
 package com.eerussianguy.blazemap;
 
+import java.io.File;
 
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.ResourceLocationArgument;
+import net.minecraft.network.chat.TranslatableComponent;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraftforge.server.command.EnumArgument;
 
+import com.eerussianguy.blazemap.api.BlazeMapAPI;
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.mapping.Layer;
+import com.eerussianguy.blazemap.engine.BlazeMapEngine;
 import com.eerussianguy.blazemap.feature.Overlays;
 import com.eerussianguy.blazemap.feature.maps.MinimapSize;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
 
 public class BlazeMapCommands {
     private static final EnumArgument<MinimapSize> MINIMAP_SIZE = EnumArgument.enumArgument(MinimapSize.class);
+    private static final SuggestionProvider<CommandSourceStack> AVAILABLE_LAYERS = (ctx, builder) ->
+        SharedSuggestionProvider.suggestResource(BlazeMapEngine.getAvailableLayers().stream().map(key -> key.location), builder);
 
     public static LiteralArgumentBuilder<CommandSourceStack> create() {
         return Commands.literal("blazemap")
             .then(createDebug())
-            .then(createMinimap());
+            .then(createMinimap())
+            .then(createRerender())
+            .then(createExport());
     }
 
     private static LiteralArgumentBuilder<CommandSourceStack> createDebug() {
@@ -58,4 +72,48 @@ public class BlazeMapCommands {
                 })
             );
     }
+
+    private static LiteralArgumentBuilder<CommandSourceStack> createRerender() {
+        return Commands.literal("rerender")
+            .then(Commands.argument("layer", ResourceLocationArgument.id())
+                .suggests(AVAILABLE_LAYERS)
+                .executes(cmd -> {
+                    ResourceLocation location = cmd.getArgument("layer", ResourceLocation.class);
+                    Key<Layer> layer = BlazeMapAPI.LAYERS.findOrCreate(location.toString());
+                    if(!BlazeMapEngine.getAvailableLayers().contains(layer)) {
+                        cmd.getSource().sendFailure(new TranslatableComponent("blazemap.rerender.unavailable", location.toString()));
+                        return 0;
+                    }
+                    try {
+                        BlazeMapEngine.rerender(layer);
+                    }
+                    catch(IllegalStateException e) {
+                        cmd.getSource().sendFailure(new TranslatableComponent("blazemap.rerender.busy"));
+                        return 0;
+                    }
+                    return Command.SINGLE_SUCCESS;
+                })
+            );
+    }
+
+    private static LiteralArgumentBuilder<CommandSourceStack> createExport() {
+        return Commands.literal("export")
+            .then(Commands.argument("layer", ResourceLocationArgument.id())
+                .suggests(AVAILABLE_LAYERS)
+                .executes(cmd -> {
+                    ResourceLocation location = cmd.getArgument("layer", ResourceLocation.class);
+                    Key<Layer> layer = BlazeMapAPI.LAYERS.findOrCreate(location.toString());
+                    if(!BlazeMapEngine.getAvailableLayers().contains(layer)) {
+                        cmd.getSource().sendFailure(new TranslatableComponent("blazemap.rerender.unavailable", location.toString()));
+                        return 0;
+                    }
+                    CommandSourceStack source = cmd.getSource();
+                    File dir = BlazeMapEngine.exportLayer(layer, count ->
+                        source.sendSuccess(new TranslatableComponent("blazemap.export.done", count, location.toString()), false)
+                    );
+                    source.sendSuccess(new TranslatableComponent("blazemap.export.start", location.toString(), dir.getPath()), false);
+                    return Command.SINGLE_SUCCESS;
+                })
+            );
+    }
 }
@@ -1,8 +1,10 @@
 package com.eerussianguy.blazemap;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.function.Function;
 
+import net.minecraft.resources.ResourceLocation;
 import net.minecraftforge.common.ForgeConfigSpec.*;
 import net.minecraftforge.fml.loading.FMLEnvironment;
 
@@ -10,6 +12,7 @@ import com.eerussianguy.blazemap.api.BlazeMapReferences;
 import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
 import com.eerussianguy.blazemap.api.mapping.Layer;
 import com.eerussianguy.blazemap.api.mapping.MapType;
+import com.eerussianguy.blazemap.engine.storage.TileFormat;
 import com.eerussianguy.blazemap.feature.maps.MinimapRenderer;
 import com.eerussianguy.blazemap.feature.maps.MinimapSize;
 import com.eerussianguy.blazemap.feature.maps.WorldMapGui;
@@ -26,6 +29,7 @@ import static com.eerussianguy.blazemap.BlazeMap.MOD_ID;
  */
 public class ClientConfig {
     public final BooleanValue enableDebug;
+    public final EngineConfig engine;
     public final MapConfig worldMap;
     public final MinimapConfig minimap;
 
@@ -36,6 +40,10 @@ public class ClientConfig {
         enableDebug = builder.apply("enableDebug").comment("Enable debug mode?").define("enableDebug", !FMLEnvironment.production);
         innerBuilder.pop();
 
+        innerBuilder.push("engine");
+        engine = new EngineConfig(builder);
+        innerBuilder.pop();
+
         innerBuilder.push("worldmap");
         worldMap = new MapConfig(builder, WorldMapGui.MIN_ZOOM, WorldMapGui.MAX_ZOOM);
         innerBuilder.pop();
@@ -45,6 +53,38 @@ public class ClientConfig {
         innerBuilder.pop();
     }
 
+    public static class EngineConfig {
+        public final DoubleValue collectionBudget;
+        public final BooleanValue snapshotCollection;
+        public final IntValue regionCacheSize;
+        public final IntValue compositeCacheSize;
+        public final DoubleValue rerenderCpuShare;
+        public final EnumValue<TileFormat> tileFormat;
+        public final ConfigValue<List<? extends String>> tileFormatOverrides;
+
+        EngineConfig(Function<String, Builder> builder) {
+            this.collectionBudget = builder.apply("collectionBudget").comment("Milliseconds per frame that may be spent collecting map data from chunks").defineInRange("collectionBudget", 2.0, 0.1, 50.0);
+            this.snapshotCollection = builder.apply("snapshotCollection").comment("Copy dirty chunks on the game thread and collect map data from the copies in background threads. Biome tints are only blended within each chunk and block entities are not available, so maps can differ slightly").define("snapshotCollection", false);
+            this.regionCacheSize = builder.apply("regionCacheSize").comment("Megabytes of native memory loaded map region images may use, the least recently used regions are unloaded past this").defineInRange("regionCacheSize", 512, 32, 8192);
+            this.compositeCacheSize = builder.apply("compositeCacheSize").comment("Megabytes of heap the blended map regions shared by the maps may use, the least recently drawn regions are dropped past this").defineInRange("compositeCacheSize", 128, 16, 4096);
+            this.rerenderCpuShare = builder.apply("rerenderCpuShare").comment("Maximum share of a CPU core layer re-render jobs may use").defineInRange("rerenderCpuShare", 0.25, 0.05, 1.0);
+            this.tileFormat = builder.apply("tileFormat").comment("File format for map region tiles. BINARY is much faster to save and load, MAPPED keeps each layer in a single memory mapped file, PNG can be opened by image editors").defineEnum("tileFormat", TileFormat.BINARY);
+            this.tileFormatOverrides = builder.apply("tileFormatOverrides").comment("Per dimension tile formats, as dimension=FORMAT (e.g. minecraft:the_nether=PNG)").defineList("tileFormatOverrides", List::of, o -> o instanceof String);
+        }
+
+        public TileFormat getTileFormat(ResourceLocation dimension) {
+            String prefix = dimension.toString() + "=";
+            for(String entry : tileFormatOverrides.get()) {
+                if(!entry.startsWith(prefix)) continue;
+                try {
+                    return TileFormat.valueOf(entry.substring(prefix.length()).trim().toUpperCase(Locale.ROOT));
+                }
+                catch(IllegalArgumentException ignored) {}
+            }
+            return tileFormat.get();
+        }
+    }
+
     public static class MapConfig {
         public final IConfigAdapter<Key<MapType>> activeMap;
         public final IConfigAdapter<List<Key<Layer>>> disabledLayers;
@@ -1,11 +1,15 @@
 package com.eerussianguy.blazemap;
 
+import net.minecraft.server.packs.resources.ResourceManagerReloadListener;
+import net.minecraftforge.client.event.RegisterClientReloadListenersEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
 import com.eerussianguy.blazemap.feature.Overlays;
+import com.eerussianguy.blazemap.feature.mapping.BlockColorCache;
 
 
 public class EventHandler {
@@ -15,6 +19,7 @@ public class EventHandler {
 
         bus.addListener(EventHandler::clientSetup);
         bus.addListener(EventHandler::onConfigReload);
+        bus.addListener(EventHandler::registerReloadListeners);
     }
 
     private static void clientSetup(final FMLClientSetupEvent event) {
@@ -24,4 +29,11 @@ public class EventHandler {
     private static void onConfigReload(ModConfigEvent.Reloading event) {
         Overlays.reload();
     }
+
+    private static void registerReloadListeners(RegisterClientReloadListenersEvent event) {
+        event.registerReloadListener((ResourceManagerReloadListener) manager -> {
+            BlockStateTable.invalidate();
+            BlockColorCache.invalidate();
+        });
+    }
 }
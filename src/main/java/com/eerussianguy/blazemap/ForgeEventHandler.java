@@ -2,15 +2,23 @@ package com.eerussianguy.blazemap;
 
 import net.minecraftforge.client.event.RegisterClientCommandsEvent;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TagsUpdatedEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
+
 public class ForgeEventHandler {
     public static void init() {
         final IEventBus bus = MinecraftForge.EVENT_BUS;
         bus.addListener(ForgeEventHandler::registerClientCommands);
+        bus.addListener(ForgeEventHandler::onTagsUpdated);
     }
 
     public static void registerClientCommands(RegisterClientCommandsEvent event) {
         event.getDispatcher().register(BlazeMapCommands.create());
     }
+
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        BlockStateTable.invalidate();
+    }
 }
@@ -54,8 +54,18 @@ public class BlazeRegistry<T> {
         return orderedKeysView;
     }
 
+    public int size() {
+        return orderedKeys.size();
+    }
+
+    /**
+     * Freezing also gives every registered key its index, dense and in registration order.
+     */
     public void freeze() {
         if(frozen) throw new IllegalStateException("Registry is already frozen!");
+        for(int i = 0; i < orderedKeys.size(); i++) {
+            orderedKeys.get(i).index = i;
+        }
         this.frozen = true;
     }
 
@@ -71,6 +81,7 @@ public class BlazeRegistry<T> {
         private final BlazeRegistry<T> registry;
         public final ResourceLocation location;
         private T cached = null;
+        private int index = -1;
 
         public Key(BlazeRegistry<T> registry, String path) {
             this(registry, new ResourceLocation(path));
@@ -94,6 +105,23 @@ public class BlazeRegistry<T> {
             return value;
         }
 
+        /**
+         * Index of this key in its registry, from 0 to size() - 1, suitable for indexing arrays and bitmasks.
+         * Keys that are equal to a registered key share its index.
+         *
+         * @return the index, or -1 if the registry is not frozen yet or the key was never registered.
+         */
+        public int getIndex() {
+            if(index >= 0)
+                return index;
+            if(!registry.isFrozen())
+                return -1;
+            RegistryEntry entry = registry.objects.get(this);
+            if(entry != null)
+                index = entry.getID().index;
+            return index;
+        }
+
         @Override
         public boolean equals(Object o) {
             if(o instanceof Key k) {
@@ -105,7 +133,7 @@ public class BlazeRegistry<T> {
 
         @Override
         public int hashCode() {
-            return Objects.hash(super.hashCode(), registry);
+            return Objects.hash(registry, location);
         }
 
         @Override
@@ -3,16 +3,34 @@ package com.eerussianguy.blazemap.api.builtin;
 import net.minecraft.nbt.CompoundTag;
 
 import com.eerussianguy.blazemap.api.mapping.MasterDatum;
+import com.eerussianguy.blazemap.api.util.Fingerprints;
 
-public record BlockColorMD(int[][] colors) implements MasterDatum {
+/**
+ * @param colors the ARGB color of each column, laid out as per ChunkLayout.
+ */
+public record BlockColorMD(int[] colors) implements MasterDatum {
+
+    public BlockColorMD {
+        ChunkLayout.checkSize(colors.length);
+    }
+
+    public int getColor(int x, int z) {
+        return colors[ChunkLayout.index(x, z)];
+    }
 
     @Override
     public CompoundTag serialize() {
-        return null;
+        CompoundTag nbt = new CompoundTag();
+        nbt.putIntArray("colors", colors);
+        return nbt;
+    }
+
+    public static BlockColorMD deserialize(CompoundTag nbt) {
+        return new BlockColorMD(nbt.getIntArray("colors"));
     }
 
     @Override
-    public MasterDatum deserialize(CompoundTag nbt) {
-        return null;
+    public long fingerprint() {
+        return Fingerprints.finish(Fingerprints.mix(Fingerprints.begin(), colors));
     }
 }
@@ -0,0 +1,21 @@
+package com.eerussianguy.blazemap.api.builtin;
+
+/**
+ * Layout of the flat per-column arrays used by the built-in MasterData.
+ * Columns are stored row by row, like the pixels of a chunk tile, so the array index
+ * of column (x, z) is the same as the index of pixel (x, y = z) in the tile.
+ */
+public final class ChunkLayout {
+    public static final int SIZE = 256;
+
+    private ChunkLayout() {}
+
+    public static int index(int x, int z) {
+        return (z << 4) | x;
+    }
+
+    static void checkSize(int length) {
+        if(length != SIZE)
+            throw new IllegalArgumentException("Expected " + SIZE + " columns, got " + length);
+    }
+}
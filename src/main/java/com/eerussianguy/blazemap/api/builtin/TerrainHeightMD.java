@@ -3,12 +3,17 @@ package com.eerussianguy.blazemap.api.builtin;
 import net.minecraft.nbt.CompoundTag;
 
 import com.eerussianguy.blazemap.api.mapping.MasterDatum;
+import com.eerussianguy.blazemap.api.util.Fingerprints;
 
 public class TerrainHeightMD implements MasterDatum {
     public final int minY, maxY, height, sea, minX, minZ;
-    public final int[][] heightmap;
+    private final short[] heightmap;
 
-    public TerrainHeightMD(int minY, int maxY, int height, int sea, int minX, int minZ, int[][] heightmap) {
+    /**
+     * @param heightmap the height of each column, laid out as per ChunkLayout.
+     */
+    public TerrainHeightMD(int minY, int maxY, int height, int sea, int minX, int minZ, short[] heightmap) {
+        ChunkLayout.checkSize(heightmap.length);
         this.minY = minY;
         this.maxY = maxY;
         this.height = height;
@@ -20,13 +25,59 @@ public class TerrainHeightMD implements MasterDatum {
         this.heightmap = heightmap;
     }
 
+    public int getHeight(int x, int z) {
+        return heightmap[ChunkLayout.index(x, z)];
+    }
+
+    public int getHeight(int index) {
+        return heightmap[index];
+    }
+
     @Override
     public CompoundTag serialize() {
-        return null;
+        CompoundTag nbt = new CompoundTag();
+        nbt.putInt("minY", minY);
+        nbt.putInt("maxY", maxY);
+        nbt.putInt("height", height);
+        nbt.putInt("sea", sea);
+        nbt.putInt("minX", minX);
+        nbt.putInt("minZ", minZ);
+        int[] heights = new int[ChunkLayout.SIZE];
+        for(int i = 0; i < heights.length; i++) {
+            heights[i] = heightmap[i];
+        }
+        nbt.putIntArray("heightmap", heights);
+        return nbt;
+    }
+
+    public static TerrainHeightMD deserialize(CompoundTag nbt) {
+        int[] heights = nbt.getIntArray("heightmap");
+        ChunkLayout.checkSize(heights.length);
+        short[] heightmap = new short[ChunkLayout.SIZE];
+        for(int i = 0; i < heightmap.length; i++) {
+            heightmap[i] = (short) heights[i];
+        }
+        return new TerrainHeightMD(
+            nbt.getInt("minY"),
+            nbt.getInt("maxY"),
+            nbt.getInt("height"),
+            nbt.getInt("sea"),
+            nbt.getInt("minX"),
+            nbt.getInt("minZ"),
+            heightmap
+        );
     }
 
     @Override
-    public MasterDatum deserialize(CompoundTag nbt) {
-        return null;
+    public long fingerprint() {
+        long hash = Fingerprints.begin();
+        hash = Fingerprints.mix(hash, minY);
+        hash = Fingerprints.mix(hash, maxY);
+        hash = Fingerprints.mix(hash, height);
+        hash = Fingerprints.mix(hash, sea);
+        hash = Fingerprints.mix(hash, minX);
+        hash = Fingerprints.mix(hash, minZ);
+        hash = Fingerprints.mix(hash, heightmap);
+        return Fingerprints.finish(hash);
     }
 }
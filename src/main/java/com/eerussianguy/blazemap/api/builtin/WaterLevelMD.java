@@ -3,12 +3,22 @@ package com.eerussianguy.blazemap.api.builtin;
 import net.minecraft.nbt.CompoundTag;
 
 import com.eerussianguy.blazemap.api.mapping.MasterDatum;
+import com.eerussianguy.blazemap.api.util.Fingerprints;
 
 public class WaterLevelMD implements MasterDatum {
+    /**
+     * Depths are stored as unsigned bytes and saturate at this value.
+     */
+    public static final int MAX_DEPTH = 255;
+
     public final int sea, minX, minZ;
-    public final int[][] level;
+    private final byte[] level;
 
-    public WaterLevelMD(int sea, int minX, int minZ, int[][] level) {
+    /**
+     * @param level the water depth of each column, laid out as per ChunkLayout. See packDepth().
+     */
+    public WaterLevelMD(int sea, int minX, int minZ, byte[] level) {
+        ChunkLayout.checkSize(level.length);
         this.sea = sea;
         this.minX = minX;
         this.minZ = minZ;
@@ -16,13 +26,44 @@ public class WaterLevelMD implements MasterDatum {
         this.level = level;
     }
 
+    public int getDepth(int x, int z) {
+        return level[ChunkLayout.index(x, z)] & 0xFF;
+    }
+
+    public int getDepth(int index) {
+        return level[index] & 0xFF;
+    }
+
+    public static byte packDepth(int depth) {
+        return (byte) Math.min(depth, MAX_DEPTH);
+    }
+
     @Override
     public CompoundTag serialize() {
-        return null;
+        CompoundTag nbt = new CompoundTag();
+        nbt.putInt("sea", sea);
+        nbt.putInt("minX", minX);
+        nbt.putInt("minZ", minZ);
+        nbt.putByteArray("level", level);
+        return nbt;
+    }
+
+    public static WaterLevelMD deserialize(CompoundTag nbt) {
+        return new WaterLevelMD(
+            nbt.getInt("sea"),
+            nbt.getInt("minX"),
+            nbt.getInt("minZ"),
+            nbt.getByteArray("level")
+        );
     }
 
     @Override
-    public MasterDatum deserialize(CompoundTag nbt) {
-        return null;
+    public long fingerprint() {
+        long hash = Fingerprints.begin();
+        hash = Fingerprints.mix(hash, sea);
+        hash = Fingerprints.mix(hash, minX);
+        hash = Fingerprints.mix(hash, minZ);
+        hash = Fingerprints.mix(hash, level);
+        return Fingerprints.finish(hash);
     }
 }
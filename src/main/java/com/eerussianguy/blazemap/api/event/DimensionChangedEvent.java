@@ -13,10 +13,10 @@ import com.eerussianguy.blazemap.api.mapping.MapType;
 import com.eerussianguy.blazemap.api.markers.IMarkerStorage;
 import com.eerussianguy.blazemap.api.markers.MapLabel;
 import com.eerussianguy.blazemap.api.markers.Waypoint;
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
 import com.eerussianguy.blazemap.api.util.IStorageAccess;
 import com.eerussianguy.blazemap.api.util.LayerRegion;
 import com.eerussianguy.blazemap.api.util.RegionPos;
-import com.mojang.blaze3d.platform.NativeImage;
 
 /**
  * Fired after the client enters a new dimension. <br>
@@ -96,15 +96,22 @@ public class DimensionChangedEvent extends Event {
 
     @FunctionalInterface
     public interface DimensionTileStorage {
+        /**
+         * Highest level of detail available to consumeTile.
+         */
+        int MAX_LOD = 2;
+
         /**
          * Gives access to a Region's section of a specific map layer. <br>
-         * It is a 512x512 32-bit ARGB image where each pixel represents 1 block in-world.
+         * It is a 512x512 32-bit ABGR image where each pixel represents 1 block in-world,
+         * stored per chunk so chunks that were never rendered can be skipped entirely.
+         * The consumer is not called for regions that have nothing in them.
          * <br>
          * <br>
          * <b>  WARNING!  </b><br>
          * <br>
-         * In order to ensure thread safety please do all NativeImage related processing inside the Consumer code. <br>
-         * <b>DO NOT</b> attempt to save a reference to the image to handle it later.<br>
+         * In order to ensure thread safety please do all tile related processing inside the Consumer code. <br>
+         * <b>DO NOT</b> attempt to save a reference to the tile to handle it later.<br>
          * <br>
          * You have been warned.<br>
          * <br>
@@ -112,13 +119,44 @@ public class DimensionChangedEvent extends Event {
          * @throws IllegalArgumentException if the layer is not in the availableLayers Set.
          * @author LordFokas
          */
-        void consumeTile(BlazeRegistry.Key<Layer> layer, RegionPos region, Consumer<NativeImage> consumer);
+        default void consumeTile(BlazeRegistry.Key<Layer> layer, RegionPos region, Consumer<IRegionTileView> consumer) {
+            consumeTile(layer, region, 0, consumer);
+        }
+
+        /**
+         * Same as above, at a lower level of detail: at level N (up to MAX_LOD) each pixel averages 2^N x 2^N blocks
+         * and the region position is in units of 2^N x 2^N regions. Level 0 is the full resolution tile.
+         * Levels above 0 are kept up to date asynchronously and may lag behind for a moment.
+         *
+         * @throws IllegalArgumentException if the layer is not in the availableLayers Set.
+         */
+        void consumeTile(BlazeRegistry.Key<Layer> layer, RegionPos region, int lod, Consumer<IRegionTileView> consumer);
+
+        /**
+         * Resolves a layer ahead of time, for code that consumes many tiles of the same layers, like map renderers.
+         * Consuming through the returned source skips looking the layer up again on every tile.
+         * The source is only valid for this dimension.
+         *
+         * @throws IllegalArgumentException if the layer is not in the availableLayers Set.
+         */
+        default LayerTileSource resolve(BlazeRegistry.Key<Layer> layer) {
+            return (region, lod, consumer) -> consumeTile(layer, region, lod, consumer);
+        }
+    }
+
+    @FunctionalInterface
+    public interface LayerTileSource {
+        /**
+         * Same as DimensionTileStorage.consumeTile, for the layer this source was resolved for.
+         */
+        void consumeTile(RegionPos region, int lod, Consumer<IRegionTileView> consumer);
     }
 
     @FunctionalInterface
     public interface DimensionTileNotifications {
         /**
          * Add a listener to be notified when a Region's section of a specific map layer changes.
+         * Each level of detail is notified on its own, once its tiles were rebuilt.
          *
          * @author LordFokas
          */
@@ -1,23 +1,25 @@
 package com.eerussianguy.blazemap.api.mapping;
 
 import net.minecraft.core.BlockPos;
-import net.minecraft.tags.BlockTags;
-import net.minecraft.tags.FluidTags;
-import net.minecraft.world.level.Level;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.block.state.BlockState;
 
 import com.eerussianguy.blazemap.api.BlazeRegistry;
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
+import com.eerussianguy.blazemap.api.util.ILevelView;
 
 /**
  * Collectors collect MasterData from chunks that need updating to be processed later.
- * This operation is executed synchronously in the main game thread.
+ * Depending on the engine configuration this operation runs either in the main game thread, against the live level,
+ * or in the data crunching threads, against a snapshot of the chunk. Collectors must therefore be thread safe,
+ * and only read the world through the given ILevelView.
  *
  * MasterData is consumed by Layers and Processors asynchronously in the data crunching threads.
  *
  * @author LordFokas
  */
 public abstract class Collector<T extends MasterDatum> implements BlazeRegistry.RegistryEntry {
-    protected static final BlockPos.MutableBlockPos POS = new BlockPos.MutableBlockPos();
+    protected static final ThreadLocal<BlockPos.MutableBlockPos> POS = ThreadLocal.withInitial(BlockPos.MutableBlockPos::new);
     protected final BlazeRegistry.Key<Collector<MasterDatum>> id;
 
     public Collector(BlazeRegistry.Key<Collector<MasterDatum>> id) {
@@ -28,15 +30,29 @@ public abstract class Collector<T extends MasterDatum> implements BlazeRegistry.
         return id;
     }
 
-    public abstract T collect(Level level, int minX, int minZ, int maxX, int maxZ);
+    public abstract T collect(ILevelView level, int minX, int minZ, int maxX, int maxZ);
 
-    protected static boolean isWater(Level level, int x, int y, int z) {
-        BlockState state = level.getBlockState(POS.set(x, y, z));
-        return state.getFluidState().is(FluidTags.WATER);
+    /**
+     * Rebuilds a MasterDatum of this collector from its serialized form, as previously given by MasterDatum.serialize().
+     * Collectors that do not support persistence may keep the default, which returns null.
+     */
+    public T deserialize(CompoundTag nbt) {
+        return null;
     }
 
-    protected static boolean isLeaves(Level level, int x, int y, int z) {
-        BlockState state = level.getBlockState(POS.set(x, y, z));
-        return state.is(BlockTags.LEAVES) || state.isAir() || state.getMaterial().isReplaceable();
+    protected static boolean isWater(ILevelView level, int x, int y, int z) {
+        return isWater(level.getBlockState(POS.get().set(x, y, z)));
+    }
+
+    protected static boolean isWater(BlockState state) {
+        return BlockStateTable.is(state, BlockStateTable.WATER);
+    }
+
+    protected static boolean isLeaves(ILevelView level, int x, int y, int z) {
+        return isLeaves(level.getBlockState(POS.get().set(x, y, z)));
+    }
+
+    protected static boolean isLeaves(BlockState state) {
+        return BlockStateTable.is(state, BlockStateTable.LEAVES);
     }
 }
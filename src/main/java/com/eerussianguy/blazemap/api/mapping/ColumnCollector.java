@@ -0,0 +1,55 @@
+package com.eerussianguy.blazemap.api.mapping;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.state.BlockState;
+
+import com.eerussianguy.blazemap.api.BlazeRegistry;
+import com.eerussianguy.blazemap.api.util.ILevelView;
+
+/**
+ * A Collector that gathers its data by walking each of the 256 columns of a chunk from the top down.
+ * Instead of reading blocks itself it provides a Visitor, which lets the engine walk every column only once
+ * and feed each block to all the ColumnCollectors active in the dimension.
+ */
+public abstract class ColumnCollector<T extends MasterDatum> extends Collector<T> {
+    public static final int SKIP_COLUMN = Integer.MIN_VALUE;
+
+    public ColumnCollector(BlazeRegistry.Key<Collector<MasterDatum>> id) {
+        super(id);
+    }
+
+    /**
+     * Creates the visitor that will collect the data for a single chunk.
+     * Visitors hold per-chunk state and are never shared between threads.
+     */
+    public abstract Visitor<T> begin(ILevelView level, int minX, int minZ);
+
+    @Override
+    public T collect(ILevelView level, int minX, int minZ, int maxX, int maxZ) {
+        Visitor<T> visitor = begin(level, minX, minZ);
+        ColumnScanner.scan(level, minX, minZ, visitor);
+        return visitor.finish();
+    }
+
+    public interface Visitor<T extends MasterDatum> {
+        /**
+         * Called before walking the column at chunk-local coordinates x, z.
+         * @return the highest Y this visitor wants to see in this column, or SKIP_COLUMN.
+         */
+        int startColumn(int x, int z);
+
+        /**
+         * Called for each block of the column, from the Y returned by startColumn downwards.
+         * The position is only valid during this call.
+         * @return true to keep visiting lower blocks, false when done with this column.
+         */
+        boolean visit(BlockState state, BlockPos pos);
+
+        /**
+         * Called after the column has been walked, whether or not the visitor was done with it.
+         */
+        void endColumn(int x, int z);
+
+        T finish();
+    }
+}
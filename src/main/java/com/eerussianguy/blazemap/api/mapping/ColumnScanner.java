@@ -0,0 +1,53 @@
+package com.eerussianguy.blazemap.api.mapping;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.block.state.BlockState;
+
+import com.eerussianguy.blazemap.api.util.ILevelView;
+
+import static com.eerussianguy.blazemap.api.mapping.ColumnCollector.SKIP_COLUMN;
+
+/**
+ * Walks the columns of a chunk once, top-down, feeding each block to every visitor still interested in it.
+ * The walk of a column ends when all visitors are done with it or the bottom of the world is reached.
+ */
+public final class ColumnScanner {
+    private ColumnScanner() {}
+
+    public static void scan(ILevelView level, int minX, int minZ, ColumnCollector.Visitor<?>... visitors) {
+        final int count = visitors.length;
+        final int floor = level.getMinBuildHeight();
+        final int[] starts = new int[count];
+        final boolean[] active = new boolean[count];
+        final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        for(int z = 0; z < 16; z++) {
+            for(int x = 0; x < 16; x++) {
+                int top = SKIP_COLUMN, remaining = 0;
+                for(int i = 0; i < count; i++) {
+                    int start = starts[i] = visitors[i].startColumn(x, z);
+                    active[i] = start != SKIP_COLUMN;
+                    if(active[i]) {
+                        remaining++;
+                        if(start > top) top = start;
+                    }
+                }
+
+                for(int y = top; y >= floor && remaining > 0; y--) {
+                    BlockState state = level.getBlockState(pos.set(minX + x, y, minZ + z));
+                    for(int i = 0; i < count; i++) {
+                        if(!active[i] || starts[i] < y) continue;
+                        if(!visitors[i].visit(state, pos)) {
+                            active[i] = false;
+                            remaining--;
+                        }
+                    }
+                }
+
+                for(ColumnCollector.Visitor<?> visitor : visitors) {
+                    visitor.endColumn(x, z);
+                }
+            }
+        }
+    }
+}
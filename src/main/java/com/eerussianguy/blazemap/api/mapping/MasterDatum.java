@@ -2,8 +2,28 @@ package com.eerussianguy.blazemap.api.mapping;
 
 import net.minecraft.nbt.CompoundTag;
 
+/**
+ * MasterData is the raw data Collectors extract from a chunk.
+ * It is persisted by the engine so maps can be regenerated later without revisiting the chunk,
+ * for that the owning Collector must be able to deserialize what serialize() returns.
+ */
 public interface MasterDatum {
+    long NO_FINGERPRINT = 0;
+
+    /**
+     * @return this datum in NBT form, or null if it should not be persisted.
+     */
     CompoundTag serialize();
 
-    MasterDatum deserialize(CompoundTag nbt);
+    /**
+     * A 64-bit hash of the contents of this MasterDatum.
+     * The engine compares it with the last fingerprint collected for the same chunk, and if they match
+     * the dependent Layers and Processors are not triggered at all.
+     *
+     * Equal data must always produce equal fingerprints. The default, NO_FINGERPRINT, opts out of diffing
+     * and makes every collection count as a change.
+     */
+    default long fingerprint() {
+        return NO_FINGERPRINT;
+    }
 }
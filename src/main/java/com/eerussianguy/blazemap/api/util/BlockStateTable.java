@@ -0,0 +1,224 @@
+package com.eerussianguy.blazemap.api.util;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.tags.FluidTags;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+import net.minecraft.world.level.material.MaterialColor;
+
+/**
+ * Caches the position-independent properties collectors ask about every block they visit,
+ * in flat arrays indexed by the block state registry ID.
+ *
+ * The table is built lazily the first time it is used, and dropped whenever tags or resources are reloaded.
+ * Every block state remembers its index into the current table (see BlockStateBaseMixin), so a lookup is a field
+ * read and an array read instead of a registry lookup.
+ * Map colors are sampled with a probe level. States whose map color reads the level or changes with position
+ * are flagged and resolved against the real level every time.
+ */
+public final class BlockStateTable {
+    public static final int AIR = 1;
+    public static final int WATER = 1 << 1;
+    /** Leaves, air or replaceable blocks, see Collector.isLeaves() */
+    public static final int LEAVES = 1 << 2;
+    /** Leaves, logs, air or replaceable blocks, which can be sunk through once under a canopy */
+    public static final int SKIPPABLE_AFTER_LEAVES = 1 << 3;
+    public static final int SOLID = 1 << 4;
+    /** Has a BlockColors provider, so its color depends on where it is */
+    public static final int TINTED = 1 << 5;
+    /** Map color depends on the level or the position, it cannot be cached */
+    public static final int POSITIONAL_COLOR = 1 << 6;
+
+    public static final int NO_COLOR = -1;
+    private static final int POSITIONAL = -2; // not a color, RGB colors are never negative
+
+    private static volatile BlockStateTable table;
+
+    private final byte[] flags;
+    private final int[] mapColors;
+
+    private BlockStateTable(int size) {
+        this.flags = new byte[size];
+        this.mapColors = new int[size];
+    }
+
+    public static boolean is(BlockState state, int flag) {
+        BlockStateTable table = get();
+        int id = indexOf(state, table);
+        if(id < 0 || id >= table.flags.length) {
+            return (computeFlags(state, Minecraft.getInstance().getBlockColors()) & flag) != 0;
+        }
+        return (table.flags[id] & flag) != 0;
+    }
+
+    /**
+     * @return the RGB map color of this state at this position, or NO_COLOR if it has none.
+     */
+    public static int getMapColor(BlockState state, BlockGetter level, BlockPos pos) {
+        BlockStateTable table = get();
+        int id = indexOf(state, table);
+        if(id < 0 || id >= table.mapColors.length || (table.flags[id] & POSITIONAL_COLOR) != 0) {
+            return toColor(state.getMapColor(level, pos));
+        }
+        return table.mapColors[id];
+    }
+
+    // The registry ID of the state, remembered on the state for as long as this table is current
+    private static int indexOf(BlockState state, BlockStateTable table) {
+        Indexed indexed = (Indexed) state;
+        Slot slot = indexed.blazemap$getTableSlot();
+        if(slot != null && slot.table == table) return slot.id;
+        int id = Block.BLOCK_STATE_REGISTRY.getId(state);
+        indexed.blazemap$setTableSlot(new Slot(table, id));
+        return id;
+    }
+
+    public static void invalidate() {
+        table = null;
+    }
+
+    private static BlockStateTable get() {
+        BlockStateTable table = BlockStateTable.table;
+        if(table == null) {
+            table = BlockStateTable.table = build();
+        }
+        return table;
+    }
+
+    private static BlockStateTable build() {
+        BlockColors colors = Minecraft.getInstance().getBlockColors();
+        BlockStateTable table = new BlockStateTable(Block.BLOCK_STATE_REGISTRY.size());
+        for(BlockState state : Block.BLOCK_STATE_REGISTRY) {
+            int id = Block.BLOCK_STATE_REGISTRY.getId(state);
+            if(id < 0 || id >= table.flags.length) continue;
+            int mapColor = computeMapColor(state);
+            table.flags[id] = (byte) (computeFlags(state, colors) | (mapColor == POSITIONAL ? POSITIONAL_COLOR : 0));
+            table.mapColors[id] = mapColor == POSITIONAL ? NO_COLOR : mapColor;
+        }
+        return table;
+    }
+
+    private static int computeFlags(BlockState state, BlockColors colors) {
+        boolean replaceable = state.isAir() || state.getMaterial().isReplaceable();
+        boolean leaves = state.is(BlockTags.LEAVES);
+        int flags = 0;
+        if(state.isAir()) flags |= AIR;
+        if(state.getFluidState().is(FluidTags.WATER)) flags |= WATER;
+        if(leaves || replaceable) flags |= LEAVES;
+        if(leaves || replaceable || state.is(BlockTags.LOGS)) flags |= SKIPPABLE_AFTER_LEAVES;
+        if(state.getMaterial().isSolid()) flags |= SOLID;
+        if(isTinted(state, colors)) flags |= TINTED;
+        return flags;
+    }
+
+    // Samples the map color at two positions of a probe level. If it reads the level, changes with the position
+    // or cannot handle the probe, it is POSITIONAL.
+    private static int computeMapColor(BlockState state) {
+        try {
+            TintProbe probe = new TintProbe(state);
+            int color = toColor(state.getMapColor(probe, BlockPos.ZERO));
+            int elsewhere = toColor(state.getMapColor(probe, new BlockPos(1000, 64, -1000)));
+            return probe.queries > 0 || color != elsewhere ? POSITIONAL : color;
+        }
+        catch(RuntimeException e) {
+            return POSITIONAL;
+        }
+    }
+
+    private static int toColor(MaterialColor color) {
+        return color == null || color == MaterialColor.NONE ? NO_COLOR : color.col;
+    }
+
+    // BlockColors returns -1 for blocks without a color provider. Providers are probed with a fake level
+    // that has a tint everywhere, and those that cannot handle it are assumed to exist.
+    private static boolean isTinted(BlockState state, BlockColors colors) {
+        try {
+            return colors.getColor(state, new TintProbe(state), BlockPos.ZERO, 0) != -1;
+        }
+        catch(RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Implemented by every BlockState through BlockStateBaseMixin, holds its index into the current table.
+     */
+    public interface Indexed {
+        Slot blazemap$getTableSlot();
+
+        void blazemap$setTableSlot(Slot slot);
+    }
+
+    public static final class Slot {
+        private final BlockStateTable table;
+        private final int id;
+
+        private Slot(BlockStateTable table, int id) {
+            this.table = table;
+            this.id = id;
+        }
+    }
+
+    // A level where every position holds the state being probed and has a tint, counting the block reads
+    private static class TintProbe implements BlockAndTintGetter {
+        private final BlockState state;
+        private int queries;
+
+        private TintProbe(BlockState state) {
+            this.state = state;
+        }
+
+        @Override
+        public int getBlockTint(BlockPos pos, ColorResolver resolver) {
+            return 0xFFFFFF;
+        }
+
+        @Override
+        public BlockState getBlockState(BlockPos pos) {
+            queries++;
+            return state;
+        }
+
+        @Override
+        public FluidState getFluidState(BlockPos pos) {
+            queries++;
+            return state.getFluidState();
+        }
+
+        @Override
+        public BlockEntity getBlockEntity(BlockPos pos) {
+            queries++;
+            return null;
+        }
+
+        @Override
+        public float getShade(Direction direction, boolean shade) {
+            return 1F;
+        }
+
+        @Override
+        public LevelLightEngine getLightEngine() {
+            return null;
+        }
+
+        @Override
+        public int getHeight() {
+            return 16;
+        }
+
+        @Override
+        public int getMinBuildHeight() {
+            return 0;
+        }
+    }
+}
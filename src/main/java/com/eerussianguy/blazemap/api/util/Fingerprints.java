@@ -0,0 +1,46 @@
+package com.eerussianguy.blazemap.api.util;
+
+import com.eerussianguy.blazemap.api.mapping.MasterDatum;
+
+/**
+ * Helpers to compute MasterDatum fingerprints without allocating.
+ * Start with begin(), mix in every field that matters and finish() the result.
+ */
+public class Fingerprints {
+    private static final long SEED = 0xCBF29CE484222325L;
+    private static final long PRIME = 0x9E3779B97F4A7C15L;
+
+    public static long begin() {
+        return SEED;
+    }
+
+    public static long mix(long hash, int value) {
+        hash = (hash ^ (value & 0xFFFFFFFFL)) * PRIME;
+        return hash ^ (hash >>> 29);
+    }
+
+    public static long mix(long hash, int[] values) {
+        for(int value : values) {
+            hash = mix(hash, value);
+        }
+        return hash;
+    }
+
+    public static long mix(long hash, short[] values) {
+        for(short value : values) {
+            hash = mix(hash, value);
+        }
+        return hash;
+    }
+
+    public static long mix(long hash, byte[] values) {
+        for(byte value : values) {
+            hash = mix(hash, value);
+        }
+        return hash;
+    }
+
+    public static long finish(long hash) {
+        return hash == MasterDatum.NO_FINGERPRINT ? 1 : hash;
+    }
+}
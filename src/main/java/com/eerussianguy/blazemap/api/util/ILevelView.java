@@ -0,0 +1,27 @@
+package com.eerussianguy.blazemap.api.util;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+/**
+ * Read-only view of a level as seen by Collectors.
+ * Depending on the engine configuration it is either backed by the live client level, in which case it
+ * is only used on the game thread, or by a snapshot of the chunk being collected that any thread can read.
+ *
+ * Collectors must not query positions outside the chunk they are collecting,
+ * a snapshot reports those as air.
+ */
+public interface ILevelView extends BlockAndTintGetter {
+    /**
+     * Same as Level.getHeight(Heightmap.Types, int, int): the first free Y above the heightmap.
+     * Only the heightmap types sent to the client are available.
+     */
+    int getHeight(Heightmap.Types type, int x, int z);
+
+    int getSeaLevel();
+
+    Holder<Biome> getBiome(BlockPos pos);
+}
@@ -0,0 +1,22 @@
+package com.eerussianguy.blazemap.api.util;
+
+/**
+ * Read access to a Region's section of a map layer: 512x512 pixels, each representing 1 block in-world,
+ * in NativeImage's ABGR order. Chunks that were never rendered have no pixels, and read as transparent.
+ */
+public interface IRegionTileView {
+    int SIZE = 512;
+
+    /**
+     * @param chunkX region-local chunk X, from 0 to 31
+     * @param chunkZ region-local chunk Z, from 0 to 31
+     */
+    boolean hasChunk(int chunkX, int chunkZ);
+
+    int getPixelRGBA(int x, int y);
+
+    /**
+     * Reads length pixels of row y, starting at x, into the array.
+     */
+    void readRow(int x, int y, int[] pixels, int offset, int length);
+}
@@ -2,21 +2,50 @@ package com.eerussianguy.blazemap.api.util;
 
 import java.util.Objects;
 
+import net.minecraft.world.level.ChunkPos;
+
 import com.eerussianguy.blazemap.api.BlazeRegistry;
 import com.eerussianguy.blazemap.api.mapping.Layer;
 
+/**
+ * A region of a layer. When used as a change notification it also carries the bounds of the chunks that changed,
+ * in region-local chunk coordinates (inclusive), so listeners can refresh only the affected pixels.
+ * The bounds do not take part in equality.
+ * <p>
+ * Regions of a level of detail above 0 are in that level's coordinates: a region of level N covers 2^N x 2^N
+ * full resolution regions, and its chunks are chunks of that level's tile.
+ */
 public class LayerRegion {
     public final BlazeRegistry.Key<Layer> layer;
     public final RegionPos region;
+    public final int lod;
+    public final int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
 
     public LayerRegion(BlazeRegistry.Key<Layer> layer, RegionPos region) {
+        this(layer, region, 0, 0, 31, 31);
+    }
+
+    public LayerRegion(BlazeRegistry.Key<Layer> layer, ChunkPos chunk) {
+        this(layer, new RegionPos(chunk), chunk.getRegionLocalX(), chunk.getRegionLocalZ(), chunk.getRegionLocalX(), chunk.getRegionLocalZ());
+    }
+
+    public LayerRegion(BlazeRegistry.Key<Layer> layer, RegionPos region, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        this(layer, region, 0, minChunkX, minChunkZ, maxChunkX, maxChunkZ);
+    }
+
+    public LayerRegion(BlazeRegistry.Key<Layer> layer, RegionPos region, int lod, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
         this.layer = layer;
         this.region = region;
+        this.lod = lod;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.maxChunkX = maxChunkX;
+        this.maxChunkZ = maxChunkZ;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(layer, region);
+        return Objects.hash(layer, region, lod);
     }
 
     @Override
@@ -24,6 +53,6 @@ public class LayerRegion {
         if(this == o) return true;
         if(o == null || getClass() != o.getClass()) return false;
         LayerRegion that = (LayerRegion) o;
-        return Objects.equals(layer, that.layer) && Objects.equals(region, that.region);
+        return lod == that.lod && Objects.equals(layer, that.layer) && Objects.equals(region, that.region);
     }
 }
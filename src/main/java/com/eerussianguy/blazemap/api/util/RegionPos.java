@@ -27,6 +27,10 @@ public class RegionPos {
         return new RegionPos(this.x + x, this.z + z);
     }
 
+    public long toLong() {
+        return ChunkPos.asLong(x, z);
+    }
+
     public boolean containsSquare(BlockPos center, int radius) {
         if(radius > 256) throw new IllegalArgumentException("Radius too big, max is 256");
         int cx = center.getX();
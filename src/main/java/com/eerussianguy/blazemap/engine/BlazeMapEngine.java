@@ -14,15 +14,20 @@ import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 
 import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.BlazeMapConfig;
 import com.eerussianguy.blazemap.api.BlazeMapAPI;
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
 import com.eerussianguy.blazemap.api.event.BlazeRegistryEvent;
 import com.eerussianguy.blazemap.api.event.DimensionChangedEvent;
 import com.eerussianguy.blazemap.api.event.ServerJoinedEvent;
+import com.eerussianguy.blazemap.api.mapping.Layer;
 import com.eerussianguy.blazemap.api.markers.IMarkerStorage;
 import com.eerussianguy.blazemap.api.markers.IStorageFactory;
 import com.eerussianguy.blazemap.api.markers.MapLabel;
@@ -137,7 +142,7 @@ public class BlazeMapEngine {
             activePipeline.availableMapTypes,
             activePipeline.availableLayers,
             TILE_CHANGE_LISTENERS::add,
-            activePipeline::consumeTile,
+            activePipeline,
             activeLabels,
             activeWaypoints,
             fileStorage
@@ -145,6 +150,58 @@ public class BlazeMapEngine {
         MinecraftForge.EVENT_BUS.post(event);
     }
 
+    public static Set<Key<Layer>> getAvailableLayers() {
+        if(activePipeline == null) return Set.of();
+        return activePipeline.availableLayers;
+    }
+
+    /**
+     * Re-renders a layer in the current dimension from stored MasterData.
+     *
+     * @throws IllegalArgumentException if the layer is not available in the current dimension.
+     * @throws IllegalStateException if there is no active pipeline or a re-render is already running.
+     */
+    public static RerenderJob rerender(Key<Layer> layer) {
+        if(activePipeline == null)
+            throw new IllegalStateException("No active pipeline");
+        return activePipeline.rerender(layer, BlazeMapConfig.CLIENT.engine.rerenderCpuShare.get());
+    }
+
+    /**
+     * Exports a layer of the current dimension as PNG images, one per region.
+     *
+     * @return the folder the images are written to.
+     * @throws IllegalArgumentException if the layer is not available in the current dimension.
+     * @throws IllegalStateException if there is no active pipeline.
+     */
+    public static File exportLayer(Key<Layer> layer, Consumer<Integer> onDone) {
+        if(activePipeline == null)
+            throw new IllegalStateException("No active pipeline");
+        return activePipeline.exportLayer(layer, onDone);
+    }
+
+    public static RerenderJob getRerenderJob() {
+        if(activePipeline == null) return null;
+        return activePipeline.getRerenderJob();
+    }
+
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent event) {
+        if(event.phase != TickEvent.Phase.START || activePipeline == null) return;
+        long budget = (long) (BlazeMapConfig.CLIENT.engine.collectionBudget.get() * 1_000_000D);
+        activePipeline.collectDirtyChunks(budget);
+    }
+
+    public static RegionTileCache getRegionCache() {
+        if(activePipeline == null) return null;
+        return activePipeline.getRegionCache();
+    }
+
+    public static int getCollectionBacklog() {
+        if(activePipeline == null) return 0;
+        return activePipeline.getCollectionBacklog();
+    }
+
     public static void onChunkChanged(ChunkPos pos) {
         if(activePipeline == null) {
             BlazeMap.LOGGER.warn("Ignoring chunk update for {}", pos);
@@ -153,6 +210,12 @@ public class BlazeMapEngine {
         activePipeline.markChunkDirty(pos);
     }
 
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if(activePipeline == null || !event.getWorld().isClientSide()) return;
+        activePipeline.onChunkUnloaded(event.getChunk().getPos());
+    }
+
     static void notifyLayerRegionChange(LayerRegion layerRegion) {
         for(Consumer<LayerRegion> listener : TILE_CHANGE_LISTENERS) {
             listener.accept(layerRegion);
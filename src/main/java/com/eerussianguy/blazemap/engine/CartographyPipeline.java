@@ -1,45 +1,75 @@
 package com.eerussianguy.blazemap.engine;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 
+import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.BlazeMapConfig;
 import com.eerussianguy.blazemap.api.BlazeMapAPI;
 import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.event.DimensionChangedEvent.DimensionTileStorage;
+import com.eerussianguy.blazemap.api.event.DimensionChangedEvent.LayerTileSource;
 import com.eerussianguy.blazemap.api.mapping.*;
+import com.eerussianguy.blazemap.api.util.ILevelView;
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
 import com.eerussianguy.blazemap.api.util.LayerRegion;
 import com.eerussianguy.blazemap.api.util.RegionPos;
 import com.eerussianguy.blazemap.engine.async.AsyncChain;
 import com.eerussianguy.blazemap.engine.async.DebouncingDomain;
 import com.eerussianguy.blazemap.engine.async.DebouncingThread;
 import com.eerussianguy.blazemap.engine.async.PriorityLock;
+import com.eerussianguy.blazemap.engine.storage.PngTileStorage;
+import com.eerussianguy.blazemap.engine.storage.TileFormat;
+import com.eerussianguy.blazemap.engine.storage.TileStorage;
 import com.eerussianguy.blazemap.util.Helpers;
 import com.mojang.blaze3d.platform.NativeImage;
 
 import static com.eerussianguy.blazemap.util.Profilers.Engine.*;
 
-public class CartographyPipeline {
+public class CartographyPipeline implements DimensionTileStorage {
+    // Chunk tiles are only needed until copied into their region, so each data thread reuses a single one.
+    private static final ThreadLocal<NativeImage> CHUNK_TILE = ThreadLocal.withInitial(() -> new NativeImage(NativeImage.Format.RGBA, 16, 16, true));
+
     public final File dimensionDir;
     public final ResourceKey<Level> dimension;
     public final Set<Key<MapType>> availableMapTypes;
     public final Set<Key<Layer>> availableLayers;
     private final Collector<MasterDatum>[] collectors;
+    private final ColumnCollector<MasterDatum>[] columnCollectors;
+    private final Collector<MasterDatum>[] otherCollectors;
+    private final int[] collectorIndices; // registry index of each collector, in the order of the collectors array
+    private final long[][] layerFilters = new long[BlazeMapAPI.LAYERS.size()][]; // by layer registry index
+    private final long[][] processorFilters = new long[BlazeMapAPI.PROCESSORS.size()][]; // by processor registry index
+    private final FingerprintCache fingerprints;
+    private final MasterDataStore mdStore;
     private final Map<Key<Layer>, List<MapType>> mapTriggers = new ConcurrentHashMap<>();
     private final Map<Key<Collector<MasterDatum>>, List<Layer>> layerTriggers = new ConcurrentHashMap<>();
     private final Map<Key<Collector<MasterDatum>>, List<Processor>> processorTriggers = new ConcurrentHashMap<>();
-    private final Map<Key<Layer>, Map<RegionPos, LayerRegionTile>> regions = new ConcurrentHashMap<>();
+    private final TileFormat tileFormat;
+    private final Map<Key<Layer>, TileStorage[]> tileStorages = new ConcurrentHashMap<>();
+    private final RegionTileCache regions;
+    private final LodPyramid lods;
+    private final Map<Key<Layer>, LongSet> absentRegions = new ConcurrentHashMap<>();
     private final DebouncingDomain<LayerRegionTile> dirtyRegions;
     private final DebouncingDomain<ChunkPos> dirtyChunks;
+    private final CollectionScheduler collectionScheduler;
     private final PriorityLock lock = new PriorityLock();
+    private RerenderJob rerenderJob;
     private boolean active;
 
 
     public CartographyPipeline(File serverDir, ResourceKey<Level> dimension) {
+        if(!BlazeMapAPI.COLLECTORS.isFrozen())
+            throw new IllegalStateException("Registries must be frozen before creating a pipeline");
         this.dimensionDir = new File(serverDir, dimension.location().toString().replace(':', '+'));
         this.dimensionDir.mkdirs();
         this.dimension = dimension;
@@ -67,6 +97,7 @@ public class CartographyPipeline {
                 mapTriggers.computeIfAbsent(layerID, $ -> new ArrayList<>(8)).add(map);
                 if(layers.contains(layerID)) continue;
                 layers.add(layerID);
+                layerFilters[layerID.getIndex()] = MapView.newFilter(layer.getCollectors());
                 for(Key<Collector<MasterDatum>> collectorID : layer.getCollectors()) {
                     Collector<MasterDatum> collector = collectorID.value();
                     if(collector == null)
@@ -82,6 +113,7 @@ public class CartographyPipeline {
         for(Key<Processor> processorID : BlazeMapAPI.PROCESSORS.keys()) {
             Processor processor = processorID.value();
             if(!processor.shouldExecuteInDimension(dimension)) continue;
+            processorFilters[processorID.getIndex()] = MapView.newFilter(processor.getCollectors());
             for(Key<Collector<MasterDatum>> collectorID : processor.getCollectors()) {
                 Collector<MasterDatum> collector = collectorID.value();
                 if(collector == null)
@@ -97,6 +129,14 @@ public class CartographyPipeline {
         this.availableLayers = Collections.unmodifiableSet(layers);
         // noinspection unchecked
         this.collectors = collectors.values().toArray(Collector[]::new);
+        // noinspection unchecked
+        this.columnCollectors = Arrays.stream(this.collectors).filter(c -> c instanceof ColumnCollector).toArray(ColumnCollector[]::new);
+        // noinspection unchecked
+        this.otherCollectors = Arrays.stream(this.collectors).filter(c -> !(c instanceof ColumnCollector)).toArray(Collector[]::new);
+        this.collectorIndices = Arrays.stream(this.collectors).mapToInt(c -> c.getID().getIndex()).toArray();
+        this.fingerprints = new FingerprintCache(this.collectors.length);
+        this.mdStore = new MasterDataStore(dimensionDir);
+        this.tileFormat = BlazeMapConfig.CLIENT.engine.getTileFormat(dimension.location());
 
         // Set up debouncing mechanisms
         AsyncChain.Root async = BlazeMapEngine.async();
@@ -107,43 +147,104 @@ public class CartographyPipeline {
             region.save();
             REGION_TIME_PROFILER.end();
         }), 1000, 30000);
-        this.dirtyChunks = new DebouncingDomain<>(this::processDirtyChunk, 500, 5000);
+        this.regions = new RegionTileCache(key -> {
+            LayerRegionTile tile = new LayerRegionTile(key.layer, key.region, getTileStorage(key.layer, 0));
+            if(!tile.tryLoad()) {
+                setRegionAbsent(key.layer, key.region, true);
+            }
+            return tile;
+        }, dirtyRegions::remove, getRegionCacheBudget());
+        this.lods = new LodPyramid(dimensionDir, regions, (layer, region) -> isRegionAbsent(absentRegions.get(layer), region), this::getTileStorage, dirtyRegions, update -> async.runOnGameThread(() -> sendMapUpdates(List.of(update))), getRegionCacheBudget());
+        this.collectionScheduler = new CollectionScheduler(this::processDirtyChunk);
+        this.dirtyChunks = new DebouncingDomain<>(collectionScheduler::push, 500, 5000);
         thread.add(dirtyRegions);
         thread.add(dirtyChunks);
     }
 
+    // Full resolution tiles go in the layer's folder, lower levels of detail in subfolders of it
+    private TileStorage getTileStorage(Key<Layer> layer, int lod) {
+        return tileStorages.computeIfAbsent(layer, l -> {
+            File layerDir = new File(dimensionDir, l.location.toString().replace(':', '+'));
+            TileStorage[] storages = new TileStorage[LodPyramid.MAX_LOD + 1];
+            for(int i = 0; i < storages.length; i++) {
+                storages[i] = tileFormat.create(i == 0 ? layerDir : new File(layerDir, "lod" + i));
+            }
+            return storages;
+        })[lod];
+    }
+
     public void markChunkDirty(ChunkPos pos) {
         dirtyChunks.push(pos);
     }
 
-    private void processDirtyChunk(ChunkPos pos) {
-        BlazeMapEngine.async()
-            .startOnGameThread($ -> this.collectFromChunk(pos))
-            .thenOnDataThread(md -> this.processMasterData(md, pos))
-            .thenOnGameThread(this::sendMapUpdates)
-            .start();
+    // A chunk seen again after unloading just renders once more, so its fingerprints need not be kept
+    public void onChunkUnloaded(ChunkPos pos) {
+        fingerprints.remove(pos);
     }
 
-    private Map<Key<Collector<MasterDatum>>, MasterDatum> collectFromChunk(ChunkPos pos) {
-        COLLECTOR_LOAD_PROFILER.hit();
-        COLLECTOR_TIME_PROFILER.begin();
-        Map<Key<Collector<MasterDatum>>, MasterDatum> data = new HashMap<>();
+    /**
+     * Collect dirty chunks on the game thread, using at most the given time budget.
+     * Chunks that do not fit are kept for the next call.
+     */
+    public void collectDirtyChunks(long budgetNanos) {
+        collectionScheduler.drain(budgetNanos);
+    }
+
+    public int getCollectionBacklog() {
+        return collectionScheduler.backlog();
+    }
+
+    // Runs on the game thread, called by the collection scheduler
+    private void processDirtyChunk(ChunkPos pos) {
         Level level = Helpers.levelOrThrow();
 
         // Do not collect data (thus skipping through the rest of the pipeline)
         // if this chunk is not currently in client cache, as that will return an empty chunk
         // which causes the map tiles to render wrongly
-        if(!level.getChunkSource().hasChunk(pos.x, pos.z)) {
-            return data;
+        if(!level.getChunkSource().hasChunk(pos.x, pos.z)) return;
+        COLLECTOR_LOAD_PROFILER.hit();
+
+        if(BlazeMapConfig.CLIENT.engine.snapshotCollection.get()) {
+            SNAPSHOT_TIME_PROFILER.begin();
+            ILevelView snapshot = new ChunkSnapshot(level, pos);
+            SNAPSHOT_TIME_PROFILER.end();
+            BlazeMapEngine.async()
+                .startOnDataThread($ -> this.collectFromChunk(snapshot, pos))
+                .thenOnDataThread(md -> this.processMasterData(md, pos))
+                .thenOnGameThread(this::sendMapUpdates)
+                .start();
         }
+        else {
+            MasterDatum[] md = collectFromChunk(new LiveLevelView(level), pos);
+            BlazeMapEngine.async()
+                .startOnDataThread($ -> this.processMasterData(md, pos))
+                .thenOnGameThread(this::sendMapUpdates)
+                .start();
+        }
+    }
+
+    // The data is indexed by collector registry index
+    private MasterDatum[] collectFromChunk(ILevelView level, ChunkPos pos) {
+        COLLECTOR_TIME_PROFILER.begin();
+        MasterDatum[] data = MapView.newSource();
 
         int x0 = pos.getMinBlockX();
         int x1 = pos.getMaxBlockX();
         int z0 = pos.getMinBlockZ();
         int z1 = pos.getMaxBlockZ();
 
-        for(Collector<MasterDatum> collector : collectors) {
-            data.put(collector.getID(), collector.collect(level, x0, z0, x1, z1));
+        // Column collectors share a single walk of the chunk's columns, the rest collect on their own
+        ColumnCollector.Visitor<?>[] visitors = new ColumnCollector.Visitor[columnCollectors.length];
+        for(int i = 0; i < columnCollectors.length; i++) {
+            visitors[i] = columnCollectors[i].begin(level, x0, z0);
+        }
+        ColumnScanner.scan(level, x0, z0, visitors);
+        for(int i = 0; i < columnCollectors.length; i++) {
+            data[columnCollectors[i].getID().getIndex()] = visitors[i].finish();
+        }
+
+        for(Collector<MasterDatum> collector : otherCollectors) {
+            data[collector.getID().getIndex()] = collector.collect(level, x0, z0, x1, z1);
         }
 
         COLLECTOR_TIME_PROFILER.end();
@@ -151,28 +252,41 @@ public class CartographyPipeline {
     }
 
     // Redraw tiles and process data based on MD changes
-    // Check what MDs changed, mark dependent layers and processors as dirty
+    // Check what MDs changed (by fingerprint), mark dependent layers and processors as dirty
     // Ask layers to redraw tiles, if applicable:
     // - if tile was redrawn:
     // -  - mark dependent map types as changed
     // -  - update map files with new tile
     // -  - add LayerRegion to the list of updated images to return
     // Before return asynchronously run dirty processors in the background
-    private List<LayerRegion> processMasterData(Map<Key<Collector<MasterDatum>>, MasterDatum> data, ChunkPos chunkPos) {
-        if(data.size() == 0) {
-            // noinspection unchecked
-            return Collections.EMPTY_LIST;
-        }
-
+    private List<LayerRegion> processMasterData(MasterDatum[] data, ChunkPos chunkPos) {
         Set<Layer> dirtyLayers = new HashSet<>();
         Set<Processor> dirtyProcessors = new HashSet<>();
-        for(Map.Entry<Key<Collector<MasterDatum>>, MasterDatum> entry : data.entrySet()) {
-            if(entry.getValue() != null) {
-                // TODO: more advanced diffing
-                Key<Collector<MasterDatum>> collectorID = entry.getKey();
-                dirtyLayers.addAll(layerTriggers.computeIfAbsent(collectorID, $ -> new ArrayList<>(8)));
-                dirtyProcessors.addAll(processorTriggers.computeIfAbsent(collectorID, $ -> new ArrayList<>(8)));
+        long[] changed = new long[collectors.length]; // recorded only once the chunk was processed
+        for(int i = 0; i < collectors.length; i++) {
+            MasterDatum datum = data[collectorIndices[i]];
+            if(datum == null) continue;
+            Key<Collector<MasterDatum>> collectorID = collectors[i].getID();
+
+            // skip data identical to what was last collected for this chunk
+            long fingerprint = datum.fingerprint();
+            if(!fingerprints.changed(chunkPos, i, fingerprint)) {
+                DIFF_HIT_PROFILER.hit();
+                continue;
             }
+            DIFF_MISS_PROFILER.hit();
+            changed[i] = fingerprint;
+
+            // persist changed data so maps can be regenerated without revisiting the chunk
+            mdStore.store(chunkPos, collectorID, datum);
+
+            dirtyLayers.addAll(layerTriggers.computeIfAbsent(collectorID, $ -> new ArrayList<>(8)));
+            dirtyProcessors.addAll(processorTriggers.computeIfAbsent(collectorID, $ -> new ArrayList<>(8)));
+        }
+        if(dirtyLayers.isEmpty() && dirtyProcessors.isEmpty()) {
+            fingerprints.record(chunkPos, changed);
+            // noinspection unchecked
+            return Collections.EMPTY_LIST;
         }
 
         RegionPos regionPos = new RegionPos(chunkPos);
@@ -183,34 +297,23 @@ public class CartographyPipeline {
             LAYER_LOAD_PROFILER.hit();
             LAYER_TIME_PROFILER.begin();
             for(Layer layer : dirtyLayers) {
-                NativeImage layerChunkTile = new NativeImage(NativeImage.Format.RGBA, 16, 16, true);
-                view.setFilter(layer.getCollectors()); // the layer should only access declared collectors
-
-                // only generate updates if the renderer populates the tile
-                // this is determined by the return value of renderTile being true
-                if(layer.renderTile(layerChunkTile, view)) {
-                    Key<Layer> layerID = layer.getID();
-
-                    // update this chunk of the region
-                    LayerRegionTile layerRegionTile = getLayerRegionTile(layerID, regionPos, false);
-                    layerRegionTile.updateTile(layerChunkTile, chunkPos);
-
-                    // asynchronously save this region later
-                    dirtyRegions.push(layerRegionTile);
-
+                if(renderLayer(layer, view, chunkPos, regionPos)) {
                     // updates for the listeners
-                    updates.add(new LayerRegion(layerID, regionPos));
+                    updates.add(new LayerRegion(layer.getID(), chunkPos));
                 }
             }
             LAYER_TIME_PROFILER.end();
         }
 
+        // if storing or rendering threw, nothing is recorded and the data is processed again when next collected
+        fingerprints.record(chunkPos, changed);
+
         if(dirtyProcessors.size() > 0) {
             BlazeMapEngine.async().runOnDataThread(() -> {
                 PROCESSOR_LOAD_PROFILER.hit();
                 PROCESSOR_TIME_PROFILER.begin();
                 for(Processor processor : dirtyProcessors) {
-                    view.setFilter(processor.getCollectors());
+                    view.setFilter(processorFilters[processor.getID().getIndex()]);
                     processor.execute(dimension, regionPos, chunkPos, view);
                 }
                 PROCESSOR_TIME_PROFILER.end();
@@ -220,23 +323,171 @@ public class CartographyPipeline {
         return updates;
     }
 
+    private boolean renderLayer(Layer layer, MapView view, ChunkPos chunkPos, RegionPos regionPos) {
+        NativeImage layerChunkTile = CHUNK_TILE.get();
+        layerChunkTile.fillRect(0, 0, 16, 16, 0);
+        view.setFilter(layerFilters[layer.getID().getIndex()]); // the layer should only access declared collectors
+
+        // only generate updates if the renderer populates the tile
+        // this is determined by the return value of renderTile being true
+        if(!layer.renderTile(layerChunkTile, view)) return false;
+
+        // update this chunk of the region
+        LayerRegionTile layerRegionTile = getLayerRegionTile(layer.getID(), regionPos, false);
+        try {
+            layerRegionTile.updateTile(layerChunkTile, chunkPos);
+            setRegionAbsent(layer.getID(), regionPos, false);
+            lods.chunkChanged(layer.getID(), chunkPos);
+
+            // asynchronously save this region later
+            dirtyRegions.push(layerRegionTile);
+        }
+        finally {
+            regions.release(layerRegionTile);
+        }
+        return true;
+    }
+
+    /**
+     * Starts a background job re-rendering every region of a layer from the stored MasterData.
+     *
+     * @throws IllegalArgumentException if the layer is not available in this dimension.
+     * @throws IllegalStateException if a re-render job is already running.
+     */
+    public synchronized RerenderJob rerender(Key<Layer> layerID, double cpuShare) {
+        if(!availableLayers.contains(layerID))
+            throw new IllegalArgumentException("Layer " + layerID + " not available for dimension " + dimension);
+        if(rerenderJob != null && rerenderJob.isRunning())
+            throw new IllegalStateException("A re-render job is already running");
+
+        Layer layer = layerID.value();
+        rerenderJob = new RerenderJob(layerID, mdStore.listRegions(), region -> rerenderRegion(layer, region), cpuShare);
+        rerenderJob.start();
+        return rerenderJob;
+    }
+
+    public RerenderJob getRerenderJob() {
+        return rerenderJob;
+    }
+
+    /**
+     * Writes every region of a layer as a PNG image into the dimension's export folder, in a data thread.
+     * The tiles themselves stay in the configured format.
+     *
+     * @param onDone called on the game thread with the number of regions written.
+     * @return the folder the images are written to.
+     * @throws IllegalArgumentException if the layer is not available in this dimension.
+     */
+    public File exportLayer(Key<Layer> layer, Consumer<Integer> onDone) {
+        checkLayerAvailable(layer);
+        File dir = new File(new File(dimensionDir, "export"), layer.location.toString().replace(':', '+'));
+        List<RegionPos> regionList = mdStore.listRegions();
+        BlazeMapEngine.async().runOnDataThread(() -> {
+            TileStorage images = new PngTileStorage(dir, null);
+            int[] exported = {0};
+            for(RegionPos region : regionList) {
+                consumeTile(layer, region, 0, view -> {
+                    if(exportTile(images, region, view)) exported[0]++;
+                });
+            }
+            BlazeMap.LOGGER.info("Exported {} regions of layer {} to {}", exported[0], layer, dir);
+            BlazeMapEngine.async().runOnGameThread(() -> onDone.accept(exported[0]));
+        });
+        return dir;
+    }
+
+    private static boolean exportTile(TileStorage images, RegionPos region, IRegionTileView view) {
+        long[] presence = new long[16];
+        for(int index = 0; index < 1024; index++) {
+            if(view.hasChunk(index & 31, index >> 5)) {
+                presence[index >> 6] |= 1L << (index & 63);
+            }
+        }
+        try {
+            images.write(region, presence, presence, (index, pixels) -> {
+                int x = (index & 31) << 4, y = (index >> 5) << 4;
+                for(int row = 0; row < 16; row++) {
+                    view.readRow(x, y + row, pixels, row << 4, 16);
+                }
+            });
+            return true;
+        }
+        catch(IOException e) {
+            BlazeMap.LOGGER.error("Error exporting region {}", region, e);
+            return false;
+        }
+    }
+
+    private void rerenderRegion(Layer layer, RegionPos regionPos) {
+        Set<Key<Collector<MasterDatum>>> collectorIDs = layer.getCollectors();
+        boolean updated = false;
+
+        LAYER_LOAD_PROFILER.hit();
+        LAYER_TIME_PROFILER.begin();
+        MasterDataRegion mdRegion = mdStore.acquireRegion(regionPos);
+        try {
+            for(int x = 0; x < 32; x++) {
+                next_chunk:
+                for(int z = 0; z < 32; z++) {
+                    if(!mdRegion.hasChunk(x, z)) continue;
+                    ChunkPos chunkPos = new ChunkPos((regionPos.x << 5) + x, (regionPos.z << 5) + z);
+
+                    MasterDatum[] data = MapView.newSource();
+                    for(Key<Collector<MasterDatum>> collectorID : collectorIDs) {
+                        MasterDatum datum = mdStore.load(mdRegion, chunkPos, collectorID);
+                        if(datum == null) continue next_chunk; // incomplete data, wait for the chunk to be visited again
+                        data[collectorID.getIndex()] = datum;
+                    }
+                    updated |= renderLayer(layer, new MapView(data), chunkPos, regionPos);
+                }
+            }
+        }
+        finally {
+            mdStore.releaseRegion(mdRegion);
+        }
+        LAYER_TIME_PROFILER.end();
+
+        if(updated) {
+            BlazeMapEngine.async().runOnGameThread(() -> sendMapUpdates(List.of(new LayerRegion(layer.getID(), regionPos))));
+        }
+    }
+
+    // The returned tile is pinned in the cache and must be released after use
     private LayerRegionTile getLayerRegionTile(Key<Layer> layer, RegionPos region, boolean priority) {
         try {
             if(priority) lock.lockPriority();
             else lock.lock();
-            return regions
-                .computeIfAbsent(layer, $ -> new HashMap<>())
-                .computeIfAbsent(region, $ -> {
-                    LayerRegionTile layerRegionTile = new LayerRegionTile(layer, region, dimensionDir);
-                    layerRegionTile.tryLoad();
-                    return layerRegionTile;
-                });
+            return regions.acquire(new LayerRegion(layer, region));
         }
         finally {
             lock.unlock();
         }
     }
 
+    // Remembers which regions have no file, so looking them up again needs no I/O nor a tile
+    private void setRegionAbsent(Key<Layer> layer, RegionPos region, boolean absent) {
+        LongSet set = absentRegions.computeIfAbsent(layer, $ -> new LongOpenHashSet());
+        synchronized(set) {
+            if(absent) set.add(region.toLong());
+            else set.remove(region.toLong());
+        }
+    }
+
+    private static boolean isRegionAbsent(LongSet set, RegionPos region) {
+        if(set == null) return false;
+        synchronized(set) {
+            return set.contains(region.toLong());
+        }
+    }
+
+    private static long getRegionCacheBudget() {
+        return BlazeMapConfig.CLIENT.engine.regionCacheSize.get() * 1024L * 1024L;
+    }
+
+    public RegionTileCache getRegionCache() {
+        return regions;
+    }
+
     // TODO: figure out why void gives generic errors but null Void is OK. Does it have to be an Object?
     private Void sendMapUpdates(List<LayerRegion> updates) {
         if(active) {
@@ -249,18 +500,79 @@ public class CartographyPipeline {
 
     public void shutdown() {
         active = false;
-        // TODO: Release all memory dedicated to caches and such. Close resources. Flush to disk.
-        regions.clear();
+        if(rerenderJob != null) {
+            rerenderJob.cancel();
+        }
+        collectionScheduler.clear();
+        // TODO: Release all memory dedicated to caches and such.
+        regions.clear(); // saves pending tiles before freeing them
+        lods.clear();
+        for(TileStorage[] storages : tileStorages.values()) {
+            for(TileStorage storage : storages) {
+                storage.flush();
+                storage.close();
+            }
+        }
+        absentRegions.clear();
+        fingerprints.clear();
+        mdStore.flush();
     }
 
     public CartographyPipeline activate() {
         active = true;
+        regions.setBudget(getRegionCacheBudget());
+        lods.setBudget(getRegionCacheBudget());
+        lods.resume();
         return this;
     }
 
-    public void consumeTile(Key<Layer> layer, RegionPos region, Consumer<NativeImage> consumer) {
+    @Override
+    public void consumeTile(Key<Layer> layer, RegionPos region, int lod, Consumer<IRegionTileView> consumer) {
+        checkLayerAvailable(layer);
+        consumeTile(layer, absentRegions.get(layer), region, lod, consumer);
+    }
+
+    // Validates the layer and finds its absent regions once, instead of on every tile
+    @Override
+    public LayerTileSource resolve(Key<Layer> layer) {
+        checkLayerAvailable(layer);
+        LongSet absent = absentRegions.computeIfAbsent(layer, $ -> new LongOpenHashSet());
+        return (region, lod, consumer) -> consumeTile(layer, absent, region, lod, consumer);
+    }
+
+    private void checkLayerAvailable(Key<Layer> layer) {
         if(!mapTriggers.containsKey(layer))
             throw new IllegalArgumentException("Layer " + layer + " not available for dimension " + dimension);
-        getLayerRegionTile(layer, region, true).consume(consumer);
+    }
+
+    private void consumeTile(Key<Layer> layer, LongSet absent, RegionPos region, int lod, Consumer<IRegionTileView> consumer) {
+        if(lod < 0 || lod > LodPyramid.MAX_LOD)
+            throw new IllegalArgumentException("Level of detail " + lod + " out of range");
+        if(lod > 0) {
+            if(lods.isAbsent(layer, lod, region)) return;
+            LayerRegionTile tile;
+            try {
+                lock.lockPriority();
+                tile = lods.acquire(layer, lod, region);
+            }
+            finally {
+                lock.unlock();
+            }
+            try {
+                tile.consume(consumer);
+            }
+            finally {
+                lods.release(lod, tile);
+            }
+            return;
+        }
+        if(isRegionAbsent(absent, region)) return;
+        LayerRegionTile tile = getLayerRegionTile(layer, region, true);
+        try {
+            tile.consume(consumer);
+        }
+        finally {
+            regions.release(tile);
+        }
     }
 }
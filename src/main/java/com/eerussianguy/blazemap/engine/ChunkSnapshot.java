@@ -0,0 +1,182 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+
+import com.eerussianguy.blazemap.api.builtin.ChunkLayout;
+import com.eerussianguy.blazemap.api.util.ILevelView;
+
+/**
+ * Immutable copy of the block and biome palettes and the client heightmaps of a single chunk.
+ * Taking the snapshot is cheap and must happen on the game thread, after which Collectors can
+ * read it from any thread while the live chunk keeps changing.
+ *
+ * Biome tints are blended like the client does, but only with columns inside this chunk.
+ */
+public class ChunkSnapshot implements ILevelView {
+    private static final BlockState AIR = Blocks.AIR.defaultBlockState();
+
+    private final Level level;
+    private final int minX, minZ, minY, height, minSection, seaLevel, blendRadius;
+    private final PalettedContainer<BlockState>[] states;
+    private final PalettedContainer<Holder<Biome>>[] biomes;
+    private final Map<Heightmap.Types, int[]> heightmaps = new EnumMap<>(Heightmap.Types.class);
+
+    @SuppressWarnings("unchecked")
+    public ChunkSnapshot(Level level, ChunkPos pos) {
+        LevelChunk chunk = level.getChunk(pos.x, pos.z);
+        LevelChunkSection[] sections = chunk.getSections();
+
+        this.level = level;
+        this.minX = pos.getMinBlockX();
+        this.minZ = pos.getMinBlockZ();
+        this.minY = level.getMinBuildHeight();
+        this.height = level.getHeight();
+        this.minSection = level.getMinSection();
+        this.seaLevel = level.getSeaLevel();
+        this.blendRadius = Minecraft.getInstance().options.biomeBlendRadius;
+        this.states = new PalettedContainer[sections.length];
+        this.biomes = new PalettedContainer[sections.length];
+
+        for(int i = 0; i < sections.length; i++) {
+            LevelChunkSection section = sections[i];
+            if(section == null) continue;
+            if(!section.hasOnlyAir()) {
+                states[i] = section.getStates().copy();
+            }
+            biomes[i] = section.getBiomes().copy();
+        }
+
+        for(Heightmap.Types type : Heightmap.Types.values()) {
+            if(!type.sendToClient()) continue;
+            int[] heightmap = new int[ChunkLayout.SIZE];
+            for(int z = 0; z < 16; z++) {
+                for(int x = 0; x < 16; x++) {
+                    heightmap[ChunkLayout.index(x, z)] = chunk.getHeight(type, x, z) + 1;
+                }
+            }
+            heightmaps.put(type, heightmap);
+        }
+    }
+
+    @Override
+    public int getHeight(Heightmap.Types type, int x, int z) {
+        int[] heightmap = heightmaps.get(type);
+        x -= minX;
+        z -= minZ;
+        if(heightmap == null || !isInside(x, z)) return minY;
+        return heightmap[ChunkLayout.index(x, z)];
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return seaLevel;
+    }
+
+    /**
+     * Biomes are looked up straight from the copied palettes, without the fuzzing of Level.getBiome().
+     */
+    @Override
+    public Holder<Biome> getBiome(BlockPos pos) {
+        return getBiome(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return null;
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        int x = pos.getX() - minX, y = pos.getY(), z = pos.getZ() - minZ;
+        if(!isInside(x, z)) return AIR;
+        int section = (y >> 4) - minSection;
+        if(section < 0 || section >= states.length || states[section] == null) return AIR;
+        return states[section].get(x, y & 15, z);
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return getBlockState(pos).getFluidState();
+    }
+
+    @Override
+    public float getShade(Direction direction, boolean shade) {
+        return level.getShade(direction, shade);
+    }
+
+    /**
+     * Not part of the snapshot, only safe to use on the game thread.
+     */
+    @Override
+    public LevelLightEngine getLightEngine() {
+        return level.getLightEngine();
+    }
+
+    @Override
+    public int getBlockTint(BlockPos pos, ColorResolver resolver) {
+        int x = pos.getX(), y = pos.getY(), z = pos.getZ();
+        if(blendRadius == 0) {
+            return resolver.getColor(getBiome(x, y, z).value(), x, z);
+        }
+
+        int x0 = Math.max(minX, x - blendRadius), x1 = Math.min(minX + 15, x + blendRadius);
+        int z0 = Math.max(minZ, z - blendRadius), z1 = Math.min(minZ + 15, z + blendRadius);
+        int r = 0, g = 0, b = 0, n = 0;
+        for(int bz = z0; bz <= z1; bz++) {
+            for(int bx = x0; bx <= x1; bx++) {
+                int color = resolver.getColor(getBiome(bx, y, bz).value(), bx, bz);
+                r += (color >> 16) & 0xFF;
+                g += (color >> 8) & 0xFF;
+                b += color & 0xFF;
+                n++;
+            }
+        }
+        if(n == 0) {
+            return resolver.getColor(getBiome(x, y, z).value(), x, z);
+        }
+        return (r / n & 0xFF) << 16 | (g / n & 0xFF) << 8 | b / n & 0xFF;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return minY;
+    }
+
+    private Holder<Biome> getBiome(int x, int y, int z) {
+        int section = Mth.clamp((y >> 4) - minSection, 0, biomes.length - 1);
+        PalettedContainer<Holder<Biome>> container = biomes[section];
+        if(container == null) {
+            return level.getUncachedNoiseBiome(x >> 2, y >> 2, z >> 2);
+        }
+        return container.get((Mth.clamp(x - minX, 0, 15) >> 2), (y >> 2) & 3, (Mth.clamp(z - minZ, 0, 15) >> 2));
+    }
+
+    private static boolean isInside(int x, int z) {
+        return ((x | z) & ~15) == 0;
+    }
+}
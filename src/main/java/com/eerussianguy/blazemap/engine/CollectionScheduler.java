@@ -0,0 +1,108 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.world.level.ChunkPos;
+
+import com.eerussianguy.blazemap.util.Helpers;
+
+import static com.eerussianguy.blazemap.util.Profilers.Engine.COLLECTOR_BUDGET_PROFILER;
+
+/**
+ * Holds dirty chunks waiting for MasterData collection and drains them on the game thread,
+ * closest to the player first, without exceeding a time budget per frame.
+ * Chunks that do not fit in the budget are carried over to the next frame.
+ * Only the few chunks closest to the player are picked at a time, so a large backlog is never sorted as a whole.
+ */
+public class CollectionScheduler {
+    private static final int BATCH = 32;
+
+    private final Set<ChunkPos> pending = ConcurrentHashMap.newKeySet();
+    private final Consumer<ChunkPos> collector;
+
+    public CollectionScheduler(Consumer<ChunkPos> collector) {
+        this.collector = collector;
+    }
+
+    public void push(ChunkPos pos) {
+        pending.add(pos);
+    }
+
+    public int backlog() {
+        return pending.size();
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Must be called on the game thread. At least one chunk is always collected if any are pending,
+     * so a budget smaller than the cost of a single chunk cannot stall the pipeline.
+     * Every call is timed, idle frames included, so the profiler shows the average cost per frame.
+     */
+    public void drain(long budgetNanos) {
+        COLLECTOR_BUDGET_PROFILER.begin();
+        if(pending.isEmpty()) {
+            COLLECTOR_BUDGET_PROFILER.end();
+            return;
+        }
+        long start = System.nanoTime();
+
+        LocalPlayer player = Helpers.getPlayer();
+        ChunkPos center = player != null ? player.chunkPosition() : null;
+        ChunkPos[] batch = new ChunkPos[BATCH];
+        do {
+            int count = nearest(center, batch);
+            for(int i = 0; i < count; i++) {
+                if(!pending.remove(batch[i])) continue;
+                collector.accept(batch[i]);
+                if(System.nanoTime() - start >= budgetNanos) break;
+            }
+        }
+        while(!pending.isEmpty() && System.nanoTime() - start < budgetNanos);
+
+        COLLECTOR_BUDGET_PROFILER.end();
+    }
+
+    // Fills the batch with the pending chunks closest to the center, closest first, in O(n log BATCH).
+    // Without a center they are taken in no particular order. Returns how many were picked.
+    private int nearest(ChunkPos center, ChunkPos[] batch) {
+        if(center == null) {
+            int count = 0;
+            for(ChunkPos pos : pending) {
+                batch[count++] = pos;
+                if(count == batch.length) break;
+            }
+            return count;
+        }
+
+        // max-heap on distance, so the farthest of the closest chunks so far is the one replaced
+        Comparator<ChunkPos> closer = Comparator.comparingInt(pos -> distanceSquared(pos, center));
+        PriorityQueue<ChunkPos> heap = new PriorityQueue<>(batch.length, closer.reversed());
+        for(ChunkPos pos : pending) {
+            if(heap.size() < batch.length) {
+                heap.add(pos);
+            }
+            else if(closer.compare(pos, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(pos);
+            }
+        }
+        int count = heap.size();
+        for(int i = count - 1; i >= 0; i--) {
+            batch[i] = heap.poll();
+        }
+        return count;
+    }
+
+    private static int distanceSquared(ChunkPos a, ChunkPos b) {
+        int dx = a.x - b.x, dz = a.z - b.z;
+        return dx * dx + dz * dz;
+    }
+}
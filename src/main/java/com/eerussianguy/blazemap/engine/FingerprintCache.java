@@ -0,0 +1,60 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.world.level.ChunkPos;
+
+import com.eerussianguy.blazemap.api.mapping.MasterDatum;
+
+/**
+ * Remembers the fingerprint of the last MasterDatum each collector produced for each chunk,
+ * so the pipeline can tell apart data that actually changed from chunks that were just re-dirtied.
+ * Chunks are forgotten when they unload, so only loaded chunks are remembered.
+ */
+public class FingerprintCache {
+    private final Map<ChunkPos, long[]> chunks = new ConcurrentHashMap<>();
+    private final int collectors;
+
+    public FingerprintCache(int collectors) {
+        this.collectors = collectors;
+    }
+
+    /**
+     * Compares a fingerprint to the one recorded for the chunk. Nothing is recorded, call record() once the
+     * changed data was processed, so data that failed to process is not skipped the next time it is collected.
+     *
+     * @return true if the datum differs from the previously recorded one, or cannot be fingerprinted.
+     */
+    public boolean changed(ChunkPos pos, int collector, long fingerprint) {
+        if(fingerprint == MasterDatum.NO_FINGERPRINT) return true;
+
+        long[] fingerprints = chunks.computeIfAbsent(pos, $ -> new long[collectors]);
+        synchronized(fingerprints) {
+            return fingerprints[collector] != fingerprint;
+        }
+    }
+
+    /**
+     * Records the fingerprints of a processed chunk, indexed by collector. NO_FINGERPRINT entries are left as they are.
+     * Chunks that unloaded since changed() was called are not recorded again.
+     */
+    public void record(ChunkPos pos, long[] fingerprints) {
+        long[] recorded = chunks.get(pos);
+        if(recorded == null) return;
+        synchronized(recorded) {
+            for(int i = 0; i < fingerprints.length; i++) {
+                if(fingerprints[i] == MasterDatum.NO_FINGERPRINT) continue;
+                recorded[i] = fingerprints[i];
+            }
+        }
+    }
+
+    public void remove(ChunkPos pos) {
+        chunks.remove(pos);
+    }
+
+    public void clear() {
+        chunks.clear();
+    }
+}
@@ -1,95 +1,296 @@
 package com.eerussianguy.blazemap.engine;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 import net.minecraft.world.level.ChunkPos;
 
+import com.eerussianguy.blazemap.BlazeMap;
 import com.eerussianguy.blazemap.api.BlazeRegistry;
 import com.eerussianguy.blazemap.api.mapping.Layer;
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
+import com.eerussianguy.blazemap.api.util.LayerRegion;
 import com.eerussianguy.blazemap.api.util.RegionPos;
 import com.eerussianguy.blazemap.engine.async.PriorityLock;
+import com.eerussianguy.blazemap.engine.storage.TileStorage;
+import com.eerussianguy.blazemap.util.ImageHelper;
 import com.mojang.blaze3d.platform.NativeImage;
 
+/**
+ * Pixels of a layer for a whole region. Regions start out sparse: only the 16x16 chunk tiles that were rendered
+ * are stored, tracked by a 32x32 presence bitmap. Once more than DENSE_THRESHOLD chunks are present the tile
+ * switches to a single 512x512 image. Fully transparent chunks are not stored at all.
+ */
 public class LayerRegionTile {
+    private static final int SIZE = IRegionTileView.SIZE;
+    private static final int CHUNKS = 1024;
+    private static final int DENSE_THRESHOLD = 768;
+
+    public final LayerRegion key;
     private final PriorityLock lock = new PriorityLock();
-    private final File file;
-    private NativeImage image;
-    private boolean isEmpty = true;
-
-    public LayerRegionTile(BlazeRegistry.Key<Layer> layer, RegionPos region, File worldDir) {
-        File layerDir = new File(worldDir, layer.location.toString().replace(':', '+'));
-        this.file = new File(layerDir, region.toString() + ".png");
-        image = new NativeImage(NativeImage.Format.RGBA, 512, 512, true);
-    }
-
-    public void tryLoad() {
-        if(file.exists()) {
-            try {
-                lock.lockPriority();
-                image = NativeImage.read(Files.newInputStream(file.toPath()));
-                isEmpty = false;
-            }
-            catch(IOException e) {
-                e.printStackTrace();
+    private final TileStorage storage;
+    private final View view = new View();
+    private final long[] presence = new long[CHUNKS / 64];
+    private final long[] changed = new long[CHUNKS / 64]; // chunks updated since the last save
+    private int[][] chunks; // sparse storage, null once dense
+    private volatile NativeImage image; // dense storage
+    private volatile int populated = 0;
+    private boolean closed = false;
+    int pins = 0; // guarded by RegionTileCache
+    long accounted = 0; // guarded by RegionTileCache
 
-                // TODO: this is temporary (aka more permanent than "forever")
-                throw new RuntimeException(e);
+    public LayerRegionTile(BlazeRegistry.Key<Layer> layer, RegionPos region, TileStorage storage) {
+        this.key = new LayerRegion(layer, region);
+        this.storage = storage;
+    }
+
+    /**
+     * Storage is only allocated once there is something in it, either loaded from disk or written to.
+     * @return false if nothing is stored for this tile.
+     */
+    public boolean tryLoad() {
+        try {
+            lock.lockPriority();
+            int[][] loaded = new int[CHUNKS][];
+            if(!storage.read(key.region, (index, pixels) -> loaded[index] = pixels)) return false;
+            int count = 0;
+            for(int i = 0; i < CHUNKS; i++) {
+                if(loaded[i] == null) continue;
+                setPresent(i, true);
+                count++;
             }
-            finally {
-                lock.unlock();
+            populated = count;
+            chunks = loaded;
+            if(count > DENSE_THRESHOLD) {
+                makeDense();
             }
+            return true;
         }
-        else {
-            file.getParentFile().mkdirs();
+        catch(IOException e) {
+            BlazeMap.LOGGER.error("Error loading region tile {} {}, treating it as empty", key.layer, key.region, e);
+            return false;
+        }
+        finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Writes the changes since the last save, if any. A tile whose chunks all went away is deleted from storage,
+     * so the old pixels are not loaded again.
+     */
     public void save() {
-        if(isEmpty) return;
         try {
             lock.lock();
-            image.writeToFile(file);
+            if(closed || isClean()) return;
+            if(populated == 0) {
+                storage.delete(key.region);
+            }
+            else {
+                storage.write(key.region, presence, changed, this::readChunk);
+            }
+            Arrays.fill(changed, 0L);
         }
         catch(IOException e) {
-            e.printStackTrace();
-
-            // TODO: this is temporary (aka more permanent than "forever")
-            throw new RuntimeException(e);
+            // the changes stay marked, so the next save tries again
+            BlazeMap.LOGGER.error("Error saving region tile {} {}", key.layer, key.region, e);
         }
         finally {
             lock.unlock();
         }
     }
 
+    // Must hold the lock
+    private void readChunk(int index, int[] pixels) {
+        if(image != null) {
+            int x = (index & 31) << 4, y = (index >> 5) << 4;
+            for(int row = 0; row < 16; row++) {
+                ImageHelper.readRow(image, x, y + row, pixels, row << 4, 16);
+            }
+        }
+        else {
+            System.arraycopy(chunks[index], 0, pixels, 0, 256);
+        }
+    }
+
     public void updateTile(NativeImage tile, ChunkPos chunk) {
-        int xOffset = chunk.getRegionLocalX() << 4;
-        int zOffset = chunk.getRegionLocalZ() << 4;
+        int cx = chunk.getRegionLocalX();
+        int cz = chunk.getRegionLocalZ();
+        int index = index(cx, cz);
+        int[] pixels = new int[256];
+        for(int y = 0; y < 16; y++) {
+            ImageHelper.readRow(tile, 0, y, pixels, y << 4, 16);
+        }
+        boolean transparent = isTransparent(pixels);
 
         try {
             lock.lock();
-            for(int x = 0; x < 16; x++) {
-                for(int z = 0; z < 16; z++) {
-                    image.setPixelRGBA(xOffset + x, zOffset + z, tile.getPixelRGBA(x, z));
+            if(closed) return;
+            // transparent chunks are absent in both modes
+            if(image != null) {
+                if(transparent && !isPresent(index)) return;
+                ImageHelper.copyRect(tile, 0, 0, image, cx << 4, cz << 4, 16, 16);
+                setChanged(index);
+                if(transparent) {
+                    setPresent(index, false);
+                    populated--;
                 }
+                else if(!isPresent(index)) {
+                    setPresent(index, true);
+                    populated++;
+                }
+                return;
+            }
+
+            if(chunks == null) {
+                if(transparent) return;
+                chunks = new int[CHUNKS][];
+            }
+            if(transparent) {
+                if(isPresent(index)) {
+                    chunks[index] = null;
+                    setPresent(index, false);
+                    setChanged(index);
+                    populated--;
+                }
+                return;
+            }
+            if(!isPresent(index)) {
+                setPresent(index, true);
+                populated++;
+            }
+            chunks[index] = pixels;
+            setChanged(index);
+            if(populated > DENSE_THRESHOLD) {
+                makeDense();
             }
-            isEmpty = false;
         }
         finally {
             lock.unlock();
         }
     }
 
-    public void consume(Consumer<NativeImage> consumer) {
-        if(isEmpty) return;
+    // Must hold the lock
+    private void makeDense() {
+        NativeImage dense = new NativeImage(NativeImage.Format.RGBA, SIZE, SIZE, true);
+        for(int i = 0; i < CHUNKS; i++) {
+            if(chunks[i] == null) continue;
+            int x = (i & 31) << 4, y = (i >> 5) << 4;
+            for(int row = 0; row < 16; row++) {
+                ImageHelper.writeRow(dense, x, y + row, chunks[i], row << 4, 16);
+            }
+        }
+        image = dense;
+        chunks = null;
+    }
+
+    /**
+     * The view is only valid during the call, do not keep references to it.
+     */
+    public void consume(Consumer<IRegionTileView> consumer) {
+        if(populated == 0) return;
         try {
             lock.lockPriority();
-            consumer.accept(image);
+            if(closed) return;
+            consumer.accept(view);
         }
         finally {
             lock.unlock();
         }
     }
+
+    public long getSizeBytes() {
+        NativeImage image = this.image;
+        if(image != null) {
+            return (long) image.getWidth() * image.getHeight() * image.format().components();
+        }
+        return populated * 256L * 4L;
+    }
+
+    /**
+     * Frees the storage. Unsaved changes are lost and further operations on this tile are ignored.
+     */
+    public void close() {
+        try {
+            lock.lockPriority();
+            if(closed) return;
+            closed = true;
+            chunks = null;
+            if(image != null) {
+                image.close();
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isPresent(int index) {
+        return (presence[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    private void setPresent(int index, boolean present) {
+        if(present) presence[index >> 6] |= 1L << (index & 63);
+        else presence[index >> 6] &= ~(1L << (index & 63));
+    }
+
+    private void setChanged(int index) {
+        changed[index >> 6] |= 1L << (index & 63);
+    }
+
+    private boolean isClean() {
+        for(long word : changed) {
+            if(word != 0) return false;
+        }
+        return true;
+    }
+
+    private static int index(int cx, int cz) {
+        return (cz << 5) | cx;
+    }
+
+    private static boolean isTransparent(int[] pixels) {
+        for(int pixel : pixels) {
+            if((pixel & 0xFF000000) != 0) return false;
+        }
+        return true;
+    }
+
+    private class View implements IRegionTileView {
+        @Override
+        public boolean hasChunk(int chunkX, int chunkZ) {
+            return isPresent(index(chunkX, chunkZ));
+        }
+
+        @Override
+        public int getPixelRGBA(int x, int y) {
+            if(image != null) return image.getPixelRGBA(x, y);
+            int[] pixels = chunks[index(x >> 4, y >> 4)];
+            return pixels == null ? 0 : pixels[((y & 15) << 4) | (x & 15)];
+        }
+
+        @Override
+        public void readRow(int x, int y, int[] pixels, int offset, int length) {
+            if(image != null) {
+                ImageHelper.readRow(image, x, y, pixels, offset, length);
+                return;
+            }
+            if(x < 0 || y < 0 || length < 0 || x + length > SIZE || y >= SIZE)
+                throw new IllegalArgumentException(String.format("Row (%d, %d) x%d out of bounds", x, y, length));
+            int end = x + length;
+            while(x < end) {
+                int run = Math.min(16 - (x & 15), end - x);
+                int[] chunk = chunks[index(x >> 4, y >> 4)];
+                if(chunk == null) {
+                    Arrays.fill(pixels, offset, offset + run, 0);
+                }
+                else {
+                    System.arraycopy(chunk, ((y & 15) << 4) | (x & 15), pixels, offset, run);
+                }
+                x += run;
+                offset += run;
+            }
+        }
+    }
 }
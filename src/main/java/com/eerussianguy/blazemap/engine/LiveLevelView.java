@@ -0,0 +1,81 @@
+package com.eerussianguy.blazemap.engine;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+
+import com.eerussianguy.blazemap.api.util.ILevelView;
+
+/**
+ * ILevelView backed directly by the live level. Must only be used on the game thread.
+ */
+public class LiveLevelView implements ILevelView {
+    private final Level level;
+
+    public LiveLevelView(Level level) {
+        this.level = level;
+    }
+
+    @Override
+    public int getHeight(Heightmap.Types type, int x, int z) {
+        return level.getHeight(type, x, z);
+    }
+
+    @Override
+    public int getSeaLevel() {
+        return level.getSeaLevel();
+    }
+
+    @Override
+    public Holder<Biome> getBiome(BlockPos pos) {
+        return level.getBiome(pos);
+    }
+
+    @Override
+    public BlockEntity getBlockEntity(BlockPos pos) {
+        return level.getBlockEntity(pos);
+    }
+
+    @Override
+    public BlockState getBlockState(BlockPos pos) {
+        return level.getBlockState(pos);
+    }
+
+    @Override
+    public FluidState getFluidState(BlockPos pos) {
+        return level.getFluidState(pos);
+    }
+
+    @Override
+    public float getShade(Direction direction, boolean shade) {
+        return level.getShade(direction, shade);
+    }
+
+    @Override
+    public LevelLightEngine getLightEngine() {
+        return level.getLightEngine();
+    }
+
+    @Override
+    public int getBlockTint(BlockPos pos, ColorResolver resolver) {
+        return level.getBlockTint(pos, resolver);
+    }
+
+    @Override
+    public int getHeight() {
+        return level.getHeight();
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return level.getMinBuildHeight();
+    }
+}
@@ -0,0 +1,312 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import net.minecraft.world.level.ChunkPos;
+
+import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.api.BlazeMapAPI;
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.event.DimensionChangedEvent.DimensionTileStorage;
+import com.eerussianguy.blazemap.api.mapping.Layer;
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
+import com.eerussianguy.blazemap.api.util.LayerRegion;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.engine.async.AsyncChain;
+import com.eerussianguy.blazemap.engine.async.DebouncingDomain;
+import com.eerussianguy.blazemap.engine.storage.TileStorage;
+import com.mojang.blaze3d.platform.NativeImage;
+
+/**
+ * Downsampled levels of detail of every layer. A tile of level N is 512x512 pixels covering 2x2 tiles of level N-1,
+ * so each of its pixels averages 2^N x 2^N blocks. Level 0 is the full resolution pipeline tile.
+ * <p>
+ * Levels are kept up to date one chunk at a time: a changed chunk marks its parent chunk in the next level dirty,
+ * which is rebuilt from its 4 children and in turn marks its own parent. Tiles missing on disk, like those of worlds
+ * mapped before levels existed, are rebuilt in full the first time they are needed in a session. Parts of the level
+ * below that have no tile are skipped, and tiles left with nothing in them are remembered as absent.
+ * Rebuilds still pending when the pyramid is cleared are written to a file and picked up again by resume().
+ * Listeners are notified once per rebuilt tile, with the bounds of all its chunks rebuilt since the last notification.
+ */
+public class LodPyramid {
+    public static final int MAX_LOD = DimensionTileStorage.MAX_LOD;
+    private static final ThreadLocal<NativeImage> LOD_TILE = ThreadLocal.withInitial(() -> new NativeImage(NativeImage.Format.RGBA, 16, 16, true));
+    private static final ThreadLocal<int[]> CHILD_PIXELS = ThreadLocal.withInitial(() -> new int[256]);
+
+    private final RegionTileCache[] levels = new RegionTileCache[MAX_LOD + 1];
+    private final Set<LayerRegion>[] checked;
+    private final Set<LayerRegion>[] absent; // tiles known to have nothing in them
+    private final BiPredicate<Key<Layer>, RegionPos> baseAbsent;
+    private final DebouncingDomain<LodChunk> dirtyChunks;
+    private final DebouncingDomain<LayerRegionTile> dirtyRegions;
+    private final DebouncingDomain<LayerRegion> rebuiltTiles;
+    private final Map<LayerRegion, LayerRegion> rebuiltBounds = new ConcurrentHashMap<>();
+    private final Consumer<LayerRegion> notifier;
+    private final File pendingFile;
+
+    /**
+     * @param dir       where pending rebuilds are kept between sessions
+     * @param base      the full resolution tiles
+     * @param baseAbsent tells if a full resolution tile is known to have nothing in it
+     * @param storages  gives the storage of a layer at a level
+     * @param notifier  called with the level of detail region and chunks of a rebuilt tile
+     */
+    @SuppressWarnings("unchecked")
+    public LodPyramid(File dir, RegionTileCache base, BiPredicate<Key<Layer>, RegionPos> baseAbsent, BiFunction<Key<Layer>, Integer, TileStorage> storages, DebouncingDomain<LayerRegionTile> dirtyRegions, Consumer<LayerRegion> notifier, long budget) {
+        this.dirtyRegions = dirtyRegions;
+        this.notifier = notifier;
+        this.pendingFile = new File(dir, "lod_pending.bin");
+        this.baseAbsent = baseAbsent;
+        this.checked = new Set[MAX_LOD + 1];
+        this.absent = new Set[MAX_LOD + 1];
+        levels[0] = base;
+        for(int lod = 1; lod <= MAX_LOD; lod++) {
+            final int level = lod;
+            checked[lod] = ConcurrentHashMap.newKeySet();
+            absent[lod] = ConcurrentHashMap.newKeySet();
+            levels[lod] = new RegionTileCache(key -> {
+                LayerRegionTile tile = new LayerRegionTile(key.layer, key.region, storages.apply(key.layer, level));
+                if(!tile.tryLoad() && checked[level].add(key)) {
+                    scheduleRebuild(key, level);
+                }
+                return tile;
+            }, dirtyRegions::remove, getLevelBudget(budget, lod));
+        }
+
+        AsyncChain.Root async = BlazeMapEngine.async();
+        this.dirtyChunks = new DebouncingDomain<>(chunk -> async.runOnDataThread(() -> rebuild(chunk)), 1000, 10000);
+        this.rebuiltTiles = new DebouncingDomain<>(this::notifyRebuilt, 250, 2000);
+        BlazeMapEngine.debouncer().add(dirtyChunks);
+        BlazeMapEngine.debouncer().add(rebuiltTiles);
+    }
+
+    /**
+     * Must be called after a full resolution chunk of the layer was updated.
+     */
+    public void chunkChanged(Key<Layer> layer, ChunkPos chunk) {
+        dirtyChunks.push(new LodChunk(layer, 1, chunk.x >> 1, chunk.z >> 1));
+    }
+
+    // The returned tile is pinned in the cache and must be released after use
+    public LayerRegionTile acquire(Key<Layer> layer, int lod, RegionPos region) {
+        return levels[lod].acquire(new LayerRegion(layer, region));
+    }
+
+    public void release(int lod, LayerRegionTile tile) {
+        levels[lod].release(tile);
+    }
+
+    /**
+     * @return true if the tile is known to have nothing in it, so there is no need to acquire it.
+     */
+    public boolean isAbsent(Key<Layer> layer, int lod, RegionPos region) {
+        return isAbsent(layer, lod, region, false);
+    }
+
+    public void setBudget(long budget) {
+        for(int lod = 1; lod <= MAX_LOD; lod++) {
+            levels[lod].setBudget(getLevelBudget(budget, lod));
+        }
+    }
+
+    /**
+     * Queues again the rebuilds that were pending when the pyramid was last cleared, in this or a previous session.
+     */
+    public void resume() {
+        if(!pendingFile.exists()) return;
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(pendingFile.toPath())))) {
+            while(in.available() > 0) {
+                Key<Layer> layer = BlazeMapAPI.LAYERS.findOrCreate(in.readUTF());
+                int lod = in.readByte(), x = in.readInt(), z = in.readInt();
+                if(!BlazeMapAPI.LAYERS.exists(layer) || lod < 1 || lod > MAX_LOD) continue;
+                dirtyChunks.push(new LodChunk(layer, lod, x, z));
+            }
+        }
+        catch(IOException e) {
+            BlazeMap.LOGGER.warn("Error reading pending level of detail rebuilds, some zoomed out tiles may be stale", e);
+        }
+        if(!pendingFile.delete()) {
+            BlazeMap.LOGGER.warn("Could not delete {}", pendingFile);
+        }
+    }
+
+    /**
+     * Frees every level, setting the pending rebuilds aside for resume().
+     */
+    public void clear() {
+        savePending(dirtyChunks.drain());
+        rebuiltTiles.clear();
+        rebuiltBounds.clear();
+        for(int lod = 1; lod <= MAX_LOD; lod++) {
+            levels[lod].clear();
+            checked[lod].clear();
+            absent[lod].clear();
+        }
+    }
+
+    // Appends, so rebuilds saved earlier and not resumed yet are kept
+    private void savePending(Set<LodChunk> pending) {
+        if(pending.isEmpty()) return;
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pendingFile, true)))) {
+            for(LodChunk chunk : pending) {
+                out.writeUTF(chunk.layer.location.toString());
+                out.writeByte(chunk.lod);
+                out.writeInt(chunk.x);
+                out.writeInt(chunk.z);
+            }
+        }
+        catch(IOException e) {
+            BlazeMap.LOGGER.error("Error saving pending level of detail rebuilds", e);
+        }
+    }
+
+    // Each level has a quarter of the tiles of the one below
+    private static long getLevelBudget(long budget, int lod) {
+        return budget >> (2 * lod);
+    }
+
+    // Called from inside the cache loader, so the level below is probed later in the data threads
+    private void scheduleRebuild(LayerRegion key, int lod) {
+        BlazeMapEngine.async().runOnDataThread(() -> {
+            boolean any = false;
+            // each quarter of the tile is made from one tile of the level below
+            for(int j = 0; j < 2; j++) {
+                for(int i = 0; i < 2; i++) {
+                    RegionPos child = new RegionPos((key.region.x << 1) + i, (key.region.z << 1) + j);
+                    if(isAbsent(key.layer, lod - 1, child, true)) continue;
+                    any = true;
+                    for(int cz = 0; cz < 16; cz++) {
+                        for(int cx = 0; cx < 16; cx++) {
+                            dirtyChunks.push(new LodChunk(key.layer, lod, (key.region.x << 5) + (i << 4) + cx, (key.region.z << 5) + (j << 4) + cz));
+                        }
+                    }
+                }
+            }
+            if(!any) {
+                absent[lod].add(key);
+            }
+        });
+    }
+
+    // Probing loads the tile, which finds out if it is absent if that was not known yet
+    private boolean isAbsent(Key<Layer> layer, int lod, RegionPos region, boolean probe) {
+        if(probe && !isAbsent(layer, lod, region, false)) {
+            release(lod, acquire(layer, lod, region));
+        }
+        if(lod == 0) return baseAbsent.test(layer, region);
+        return absent[lod].contains(new LayerRegion(layer, region));
+    }
+
+    // Runs on the data thread. Averages the 4 child chunks of the level below into this chunk.
+    private void rebuild(LodChunk chunk) {
+        // the 4 children always are in the same tile, there is nothing to average if it is absent
+        if(isAbsent(chunk.layer, chunk.lod - 1, new RegionPos(chunk.x >> 4, chunk.z >> 4), false)) return;
+
+        NativeImage tile = LOD_TILE.get();
+        tile.fillRect(0, 0, 16, 16, 0);
+
+        for(int j = 0; j < 2; j++) {
+            for(int i = 0; i < 2; i++) {
+                int childX = (chunk.x << 1) + i, childZ = (chunk.z << 1) + j;
+                int offsetX = i << 3, offsetY = j << 3;
+                LayerRegionTile child = acquire(chunk.layer, chunk.lod - 1, new RegionPos(childX >> 5, childZ >> 5));
+                try {
+                    child.consume(view -> downsample(view, childX & 31, childZ & 31, tile, offsetX, offsetY));
+                }
+                finally {
+                    release(chunk.lod - 1, child);
+                }
+            }
+        }
+
+        RegionPos targetRegion = new RegionPos(chunk.x >> 5, chunk.z >> 5);
+        absent[chunk.lod].remove(new LayerRegion(chunk.layer, targetRegion));
+        LayerRegionTile target = acquire(chunk.layer, chunk.lod, targetRegion);
+        try {
+            target.updateTile(tile, new ChunkPos(chunk.x, chunk.z));
+            dirtyRegions.push(target);
+        }
+        finally {
+            release(chunk.lod, target);
+        }
+
+        int cx = chunk.x & 31, cz = chunk.z & 31;
+        LayerRegion rebuilt = new LayerRegion(chunk.layer, targetRegion, chunk.lod, cx, cz, cx, cz);
+        rebuiltBounds.merge(rebuilt, rebuilt, (a, b) -> new LayerRegion(a.layer, a.region, a.lod,
+            Math.min(a.minChunkX, b.minChunkX), Math.min(a.minChunkZ, b.minChunkZ), Math.max(a.maxChunkX, b.maxChunkX), Math.max(a.maxChunkZ, b.maxChunkZ)));
+        rebuiltTiles.push(rebuilt);
+
+        if(chunk.lod < MAX_LOD) {
+            dirtyChunks.push(new LodChunk(chunk.layer, chunk.lod + 1, chunk.x >> 1, chunk.z >> 1));
+        }
+    }
+
+    // A rebuild merging in after the bounds are taken pushes the tile again, so nothing is lost
+    private void notifyRebuilt(LayerRegion tile) {
+        LayerRegion bounds = rebuiltBounds.remove(tile);
+        if(bounds != null) {
+            notifier.accept(bounds);
+        }
+    }
+
+    private static void downsample(IRegionTileView view, int chunkX, int chunkZ, NativeImage tile, int offsetX, int offsetY) {
+        if(!view.hasChunk(chunkX, chunkZ)) return;
+        int[] pixels = CHILD_PIXELS.get();
+        for(int y = 0; y < 16; y++) {
+            view.readRow(chunkX << 4, (chunkZ << 4) + y, pixels, y << 4, 16);
+        }
+        for(int y = 0; y < 8; y++) {
+            for(int x = 0; x < 8; x++) {
+                int i = (y << 5) | (x << 1);
+                tile.setPixelRGBA(offsetX + x, offsetY + y, average(pixels[i], pixels[i + 1], pixels[i + 16], pixels[i + 17]));
+            }
+        }
+    }
+
+    // Alpha is averaged over all 4 pixels, colors only over the visible ones so edges do not darken.
+    private static int average(int p0, int p1, int p2, int p3) {
+        int a0 = p0 >>> 24, a1 = p1 >>> 24, a2 = p2 >>> 24, a3 = p3 >>> 24;
+        int visible = (a0 == 0 ? 0 : 1) + (a1 == 0 ? 0 : 1) + (a2 == 0 ? 0 : 1) + (a3 == 0 ? 0 : 1);
+        if(visible == 0) return 0;
+        // the color of invisible pixels is masked out of the sums
+        int c0 = a0 == 0 ? 0 : p0, c1 = a1 == 0 ? 0 : p1, c2 = a2 == 0 ? 0 : p2, c3 = a3 == 0 ? 0 : p3;
+        int alpha = a0 + a1 + a2 + a3;
+        int r = (c0 & 0xFF) + (c1 & 0xFF) + (c2 & 0xFF) + (c3 & 0xFF);
+        int g = (c0 >> 8 & 0xFF) + (c1 >> 8 & 0xFF) + (c2 >> 8 & 0xFF) + (c3 >> 8 & 0xFF);
+        int b = (c0 >> 16 & 0xFF) + (c1 >> 16 & 0xFF) + (c2 >> 16 & 0xFF) + (c3 >> 16 & 0xFF);
+        return (alpha >> 2) << 24 | (b / visible) << 16 | (g / visible) << 8 | (r / visible);
+    }
+
+    private static class LodChunk {
+        final Key<Layer> layer;
+        final int lod, x, z;
+
+        LodChunk(Key<Layer> layer, int lod, int x, int z) {
+            this.layer = layer;
+            this.lod = lod;
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(layer, lod, x, z);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(o == null || getClass() != o.getClass()) return false;
+            LodChunk that = (LodChunk) o;
+            return lod == that.lod && x == that.x && z == that.z && Objects.equals(layer, that.layer);
+        }
+    }
+}
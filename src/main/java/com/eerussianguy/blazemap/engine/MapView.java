@@ -1,29 +1,48 @@
 package com.eerussianguy.blazemap.engine;
 
-import java.util.Map;
-import java.util.Set;
+import java.util.Collection;
 
+import com.eerussianguy.blazemap.api.BlazeMapAPI;
 import com.eerussianguy.blazemap.api.BlazeRegistry;
 import com.eerussianguy.blazemap.api.mapping.Collector;
 import com.eerussianguy.blazemap.api.mapping.MasterDatum;
 import com.eerussianguy.blazemap.api.util.IDataSource;
 
+/**
+ * MasterData of a chunk, indexed by the collectors' registry index, filtered down to the collectors
+ * the current reader declared. The filter is a bitmask over the same index.
+ */
 public class MapView implements IDataSource {
-    private final Map<BlazeRegistry.Key<Collector<MasterDatum>>, MasterDatum> source;
-    private Set<BlazeRegistry.Key<Collector<MasterDatum>>> filter;
+    private final MasterDatum[] source;
+    private long[] filter;
 
-    public MapView(Map<BlazeRegistry.Key<Collector<MasterDatum>>, MasterDatum> source) {
+    public MapView(MasterDatum[] source) {
         this.source = source;
     }
 
-    public void setFilter(Set<BlazeRegistry.Key<Collector<MasterDatum>>> filter) {
+    public void setFilter(long[] filter) {
         this.filter = filter;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T extends MasterDatum> T get(BlazeRegistry.Key<Collector<T>> key) {
-        if(!filter.contains(key)) return null;
-        return (T) source.get(key);
+        int index = key.getIndex();
+        if(index < 0 || index >= source.length) return null;
+        if((filter[index >> 6] & (1L << (index & 63))) == 0) return null;
+        return (T) source[index];
+    }
+
+    public static MasterDatum[] newSource() {
+        return new MasterDatum[BlazeMapAPI.COLLECTORS.size()];
+    }
+
+    public static long[] newFilter(Collection<BlazeRegistry.Key<Collector<MasterDatum>>> collectors) {
+        long[] filter = new long[(BlazeMapAPI.COLLECTORS.size() + 63) >> 6];
+        for(BlazeRegistry.Key<Collector<MasterDatum>> collector : collectors) {
+            int index = collector.getIndex();
+            if(index >= 0) filter[index >> 6] |= 1L << (index & 63);
+        }
+        return filter;
     }
 }
@@ -0,0 +1,162 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.ChunkPos;
+
+import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+
+/**
+ * Holds the serialized MasterData of every chunk in a region, backed by a single compressed NBT file.
+ * The file is only read the first time the region is accessed. A file that cannot be read is moved aside
+ * instead of being overwritten by the next save, so its data can still be recovered.
+ * Saves of the same region run one at a time, so the newest snapshot is always the one left on disk.
+ */
+public class MasterDataRegion {
+    private static final int VERSION = 2;
+
+    public final RegionPos region;
+    private final File file;
+    private final CompoundTag[] chunks = new CompoundTag[1024];
+    private final Object saveLock = new Object();
+    private boolean loaded = false;
+    private boolean readOnly = false; // the unreadable file could not be moved aside, never overwrite it
+    private long changes = 0, savedChanges = 0;
+    int pins = 0; // guarded by MasterDataStore
+
+    public MasterDataRegion(RegionPos region, File dir) {
+        this.region = region;
+        this.file = new File(dir, region.toString() + MasterDataStore.EXTENSION);
+    }
+
+    public synchronized void put(ChunkPos chunk, String collector, CompoundTag data) {
+        ensureLoaded();
+        int index = index(chunk.getRegionLocalX(), chunk.getRegionLocalZ());
+        CompoundTag tag = chunks[index];
+        if(tag == null) {
+            tag = chunks[index] = new CompoundTag();
+        }
+        tag.put(collector, data);
+        changes++;
+    }
+
+    public synchronized CompoundTag get(ChunkPos chunk, String collector) {
+        ensureLoaded();
+        CompoundTag tag = chunks[index(chunk.getRegionLocalX(), chunk.getRegionLocalZ())];
+        if(tag == null || !tag.contains(collector, Tag.TAG_COMPOUND)) return null;
+        return tag.getCompound(collector);
+    }
+
+    public synchronized boolean hasChunk(int localX, int localZ) {
+        ensureLoaded();
+        return chunks[index(localX, localZ)] != null;
+    }
+
+    /**
+     * @return true if there are changes that were not saved yet.
+     */
+    public synchronized boolean isDirty() {
+        return changes != savedChanges;
+    }
+
+    public void save() {
+        synchronized(saveLock) {
+            write();
+        }
+    }
+
+    // Must hold the save lock. The snapshot is taken under the region lock, the file is written outside of it.
+    private void write() {
+        byte[] bytes;
+        long saving;
+        synchronized(this) {
+            if(!loaded || readOnly || changes == savedChanges) return;
+            saving = changes;
+            ListTag list = new ListTag();
+            for(int i = 0; i < chunks.length; i++) {
+                if(chunks[i] == null) continue;
+                CompoundTag entry = new CompoundTag();
+                entry.putShort("index", (short) i);
+                entry.put("data", chunks[i]);
+                list.add(entry);
+            }
+            CompoundTag root = new CompoundTag();
+            root.putInt("version", VERSION);
+            root.put("chunks", list);
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                NbtIo.writeCompressed(root, buffer);
+                bytes = buffer.toByteArray();
+            }
+            catch(IOException e) {
+                BlazeMap.LOGGER.error("Error serializing MasterData region {}", region, e);
+                return;
+            }
+        }
+
+        try {
+            file.getParentFile().mkdirs();
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            Files.write(temp.toPath(), bytes);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e) {
+            BlazeMap.LOGGER.error("Error saving MasterData region {}", region, e);
+            return;
+        }
+        synchronized(this) {
+            // changes made while writing are still pending
+            savedChanges = saving;
+        }
+    }
+
+    private void ensureLoaded() {
+        if(loaded) return;
+        if(file.exists()) {
+            try {
+                CompoundTag root = NbtIo.readCompressed(file);
+                if(root.getInt("version") != VERSION) {
+                    BlazeMap.LOGGER.warn("Ignoring MasterData region {} with unknown version {}", region, root.getInt("version"));
+                    moveAside();
+                }
+                else {
+                    ListTag list = root.getList("chunks", Tag.TAG_COMPOUND);
+                    for(int i = 0; i < list.size(); i++) {
+                        CompoundTag entry = list.getCompound(i);
+                        chunks[entry.getShort("index")] = entry.getCompound("data");
+                    }
+                }
+            }
+            catch(IOException | RuntimeException e) {
+                BlazeMap.LOGGER.error("Error loading MasterData region {}", region, e);
+                moveAside();
+            }
+        }
+        loaded = true;
+    }
+
+    private void moveAside() {
+        File corrupt = new File(file.getParentFile(), file.getName() + ".corrupt");
+        try {
+            Files.move(file.toPath(), corrupt.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            BlazeMap.LOGGER.warn("Moved unreadable MasterData region {} to {}", region, corrupt.getName());
+        }
+        catch(IOException e) {
+            BlazeMap.LOGGER.error("Error moving aside MasterData region {}, it will not be saved this session", region, e);
+            readOnly = true;
+        }
+    }
+
+    private static int index(int localX, int localZ) {
+        return (localZ << 5) | localX;
+    }
+}
@@ -0,0 +1,140 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.io.File;
+import java.util.*;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.ChunkPos;
+
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.mapping.Collector;
+import com.eerussianguy.blazemap.api.mapping.MasterDatum;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.engine.async.AsyncChain;
+import com.eerussianguy.blazemap.engine.async.DebouncingDomain;
+
+/**
+ * Per-dimension persistent storage for collected MasterData, sharded by region.
+ * Writes are kept in memory and flushed to disk asynchronously, debounced per region.
+ * Regions are pinned while in use, and past MAX_REGIONS the least recently used ones are dropped once saved.
+ */
+public class MasterDataStore {
+    static final String EXTENSION = ".nbt";
+    private static final int MAX_REGIONS = 64;
+
+    private final File dir;
+    private final LinkedHashMap<RegionPos, MasterDataRegion> regions = new LinkedHashMap<>(64, 0.75F, true);
+    private final DebouncingDomain<MasterDataRegion> dirtyRegions;
+
+    public MasterDataStore(File dimensionDir) {
+        this.dir = new File(dimensionDir, "masterdata");
+        this.dir.mkdirs();
+
+        AsyncChain.Root async = BlazeMapEngine.async();
+        this.dirtyRegions = new DebouncingDomain<>(region -> async.runOnDataThread(() -> {
+            region.save();
+            trim();
+        }), 2500, 30000);
+        BlazeMapEngine.debouncer().add(dirtyRegions);
+    }
+
+    public void store(ChunkPos chunk, Key<Collector<MasterDatum>> collector, MasterDatum datum) {
+        CompoundTag data = datum.serialize();
+        if(data == null) return;
+        MasterDataRegion region = acquireRegion(new RegionPos(chunk));
+        try {
+            region.put(chunk, collector.location.toString(), data);
+            dirtyRegions.push(region);
+        }
+        finally {
+            releaseRegion(region);
+        }
+    }
+
+    /**
+     * @return the stored datum, or null if it does not exist or the collector cannot deserialize it.
+     */
+    public MasterDatum load(ChunkPos chunk, Key<Collector<MasterDatum>> collector) {
+        MasterDataRegion region = acquireRegion(new RegionPos(chunk));
+        try {
+            return load(region, chunk, collector);
+        }
+        finally {
+            releaseRegion(region);
+        }
+    }
+
+    /**
+     * Same as above, from a region already acquired by the caller.
+     */
+    public MasterDatum load(MasterDataRegion region, ChunkPos chunk, Key<Collector<MasterDatum>> collector) {
+        CompoundTag data = region.get(chunk, collector.location.toString());
+        if(data == null) return null;
+        return collector.value().deserialize(data);
+    }
+
+    /**
+     * Gets a region and pins it in memory. Every call must be matched by a call to releaseRegion().
+     */
+    public synchronized MasterDataRegion acquireRegion(RegionPos pos) {
+        MasterDataRegion region = regions.computeIfAbsent(pos, r -> new MasterDataRegion(r, dir));
+        region.pins++;
+        return region;
+    }
+
+    public void releaseRegion(MasterDataRegion region) {
+        synchronized(this) {
+            region.pins--;
+        }
+        trim();
+    }
+
+    // Drops the least recently used regions that are neither pinned nor waiting to be saved
+    private synchronized void trim() {
+        Iterator<MasterDataRegion> iterator = regions.values().iterator();
+        while(regions.size() > MAX_REGIONS && iterator.hasNext()) {
+            MasterDataRegion region = iterator.next();
+            if(region.pins > 0 || region.isDirty()) continue;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return all regions that have MasterData, either persisted to disk or pending a save.
+     */
+    public List<RegionPos> listRegions() {
+        Set<RegionPos> set;
+        synchronized(this) {
+            set = new HashSet<>(regions.keySet());
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(EXTENSION));
+        if(files != null) {
+            for(File file : files) {
+                String name = file.getName();
+                String[] coords = name.substring(1, name.length() - EXTENSION.length() - 1).split(",");
+                try {
+                    set.add(new RegionPos(Integer.parseInt(coords[0]), Integer.parseInt(coords[1])));
+                }
+                catch(NumberFormatException | ArrayIndexOutOfBoundsException ignored) {}
+            }
+        }
+        return new ArrayList<>(set);
+    }
+
+    /**
+     * Saves every region with unsaved changes in the calling thread, waiting for saves already running.
+     */
+    public void flush() {
+        dirtyRegions.clear();
+        List<MasterDataRegion> dirty = new ArrayList<>();
+        synchronized(this) {
+            for(MasterDataRegion region : regions.values()) {
+                if(region.isDirty()) dirty.add(region);
+            }
+        }
+        for(MasterDataRegion region : dirty) {
+            region.save();
+        }
+        trim();
+    }
+}
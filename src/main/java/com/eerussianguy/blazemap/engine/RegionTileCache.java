@@ -0,0 +1,176 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.eerussianguy.blazemap.api.util.LayerRegion;
+
+import static com.eerussianguy.blazemap.util.Profilers.Engine.REGION_EVICT_PROFILER;
+
+/**
+ * Keeps loaded LayerRegionTiles in memory within a budget of bytes, evicting the least recently used ones first.
+ * Tiles are pinned while acquired and are never evicted until every holder released them.
+ * Tiles that have no image are evicted as soon as they are released, which still writes a pending save or delete.
+ * Evicted tiles are saved first if they have pending changes, then their images are freed. Saving encodes a whole
+ * region, so evictions happen in the data threads rather than in whichever thread went over the budget.
+ */
+public class RegionTileCache {
+    private final LinkedHashMap<LayerRegion, LayerRegionTile> tiles = new LinkedHashMap<>(64, 0.75F, true);
+    private final Map<LayerRegion, LayerRegionTile> evicting = new HashMap<>();
+    private final Function<LayerRegion, LayerRegionTile> loader;
+    private final Predicate<LayerRegionTile> unqueueSave;
+    private volatile long budget;
+    private volatile long resident;
+
+    /**
+     * @param loader creates and loads a tile that is not in memory
+     * @param unqueueSave cancels a pending save of the tile, returning true if there was one
+     */
+    public RegionTileCache(Function<LayerRegion, LayerRegionTile> loader, Predicate<LayerRegionTile> unqueueSave, long budget) {
+        this.loader = loader;
+        this.unqueueSave = unqueueSave;
+        this.budget = budget;
+    }
+
+    /**
+     * Gets a tile, loading it if needed, and pins it. Every call must be matched by a call to release().
+     */
+    public LayerRegionTile acquire(LayerRegion key) {
+        List<LayerRegionTile> victims;
+        LayerRegionTile tile;
+        synchronized(this) {
+            tile = tiles.get(key);
+            if(tile == null) {
+                // a tile still being saved after eviction is taken back instead of reading a stale file
+                tile = evicting.remove(key);
+                if(tile == null) {
+                    tile = loader.apply(key);
+                }
+                tiles.put(key, tile);
+                tile.accounted = tile.getSizeBytes();
+                resident += tile.accounted;
+            }
+            tile.pins++;
+            victims = selectVictims();
+        }
+        evict(victims);
+        return tile;
+    }
+
+    public void release(LayerRegionTile tile) {
+        List<LayerRegionTile> victims;
+        boolean empty = false;
+        synchronized(this) {
+            tile.pins--;
+            if(tile.pins == 0) notifyAll(); // clear() may be waiting for this tile
+            // tiles allocate their image on the first write, so their size may have changed while acquired
+            if(tiles.get(tile.key) == tile) {
+                long size = tile.getSizeBytes();
+                resident += size - tile.accounted;
+                tile.accounted = size;
+                // tiles without an image cost nothing to recreate, so they are not kept around. They go through
+                // evicting like any victim, a delete of the tile may still be queued and must not be lost.
+                if(size == 0 && tile.pins == 0) {
+                    tiles.remove(tile.key);
+                    evicting.put(tile.key, tile);
+                    empty = true;
+                }
+            }
+            victims = selectVictims();
+        }
+        if(empty) {
+            evict(List.of(tile));
+        }
+        evict(victims);
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getResidentBytes() {
+        return resident;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Saves and frees every tile, in the calling thread. Pinned tiles are waited for until they are released,
+     * so this must not be called while holding a pin.
+     */
+    public void clear() {
+        List<LayerRegionTile> victims = new ArrayList<>();
+        synchronized(this) {
+            while(true) {
+                Iterator<LayerRegionTile> iterator = tiles.values().iterator();
+                while(iterator.hasNext()) {
+                    LayerRegionTile tile = iterator.next();
+                    if(tile.pins > 0) continue;
+                    iterator.remove();
+                    resident -= tile.accounted;
+                    evicting.put(tile.key, tile);
+                    victims.add(tile);
+                }
+                if(tiles.isEmpty()) break;
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        for(LayerRegionTile tile : victims) {
+            if(unqueueSave.test(tile)) {
+                tile.save();
+            }
+            free(tile);
+        }
+    }
+
+    // Must hold the lock. Walks from the least recently used tile, skipping pinned ones.
+    private List<LayerRegionTile> selectVictims() {
+        if(resident <= budget) return Collections.emptyList();
+        List<LayerRegionTile> victims = new ArrayList<>();
+        Iterator<LayerRegionTile> iterator = tiles.values().iterator();
+        while(resident > budget && iterator.hasNext()) {
+            LayerRegionTile tile = iterator.next();
+            if(tile.pins > 0) continue;
+            iterator.remove();
+            resident -= tile.accounted;
+            evicting.put(tile.key, tile);
+            victims.add(tile);
+        }
+        return victims;
+    }
+
+    private void evict(List<LayerRegionTile> victims) {
+        for(LayerRegionTile tile : victims) {
+            if(unqueueSave.test(tile)) {
+                BlazeMapEngine.async().runOnDataThread(() -> {
+                    tile.save();
+                    free(tile);
+                });
+            }
+            else {
+                free(tile);
+            }
+        }
+    }
+
+    private synchronized void free(LayerRegionTile tile) {
+        // only free the tile if nobody took it back while it was being saved
+        if(evicting.remove(tile.key, tile)) {
+            tile.close();
+            REGION_EVICT_PROFILER.hit();
+        }
+    }
+}
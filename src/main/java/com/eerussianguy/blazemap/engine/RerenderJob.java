@@ -0,0 +1,117 @@
+package com.eerussianguy.blazemap.engine;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import net.minecraft.network.chat.TranslatableComponent;
+
+import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.mapping.Layer;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.engine.async.AsyncAwaiter;
+import com.eerussianguy.blazemap.util.Helpers;
+
+/**
+ * Re-renders a layer for a list of regions from persisted MasterData, one region at a time.
+ * Each region is rendered in the data cruncher, after which the job sleeps long enough to keep
+ * its share of CPU time under the configured limit, leaving room for live chunk updates.
+ */
+public class RerenderJob {
+    public final Key<Layer> layer;
+    private final List<RegionPos> regions;
+    private final Consumer<RegionPos> renderer;
+    private final double cpuShare;
+    private volatile int done = 0;
+    private volatile boolean running = true;
+
+    RerenderJob(Key<Layer> layer, List<RegionPos> regions, Consumer<RegionPos> renderer, double cpuShare) {
+        this.layer = layer;
+        this.regions = regions;
+        this.renderer = renderer;
+        this.cpuShare = cpuShare;
+    }
+
+    void start() {
+        Thread thread = new Thread(this::work, "Blaze Map Rerender " + layer);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void cancel() {
+        running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getDone() {
+        return done;
+    }
+
+    public int getTotal() {
+        return regions.size();
+    }
+
+    public float getProgress() {
+        return regions.isEmpty() ? 1F : ((float) done) / regions.size();
+    }
+
+    private void work() {
+        long start = System.currentTimeMillis();
+        notifyPlayer("blazemap.rerender.start", layer.toString(), regions.size());
+        int reported = 0;
+
+        for(RegionPos region : regions) {
+            if(!running) break;
+
+            long begin = System.nanoTime();
+            AsyncAwaiter awaiter = new AsyncAwaiter(1);
+            BlazeMapEngine.async().runOnDataThread(() -> {
+                try {
+                    renderer.accept(region);
+                }
+                finally {
+                    awaiter.done();
+                }
+            });
+            awaiter.await();
+            long elapsed = System.nanoTime() - begin;
+            done++;
+
+            int percent = (int) (getProgress() * 100);
+            if(percent / 10 > reported / 10) {
+                reported = percent;
+                notifyPlayer("blazemap.rerender.progress", layer.toString(), percent);
+            }
+
+            // Throttle: with a share of 25% we rest 3 times as long as we worked.
+            long rest = (long) (elapsed * (1D - cpuShare) / cpuShare) / 1_000_000L;
+            if(rest > 0) {
+                try {
+                    Thread.sleep(rest);
+                }
+                catch(InterruptedException ignored) {}
+            }
+        }
+
+        if(running) {
+            running = false;
+            notifyPlayer("blazemap.rerender.done", layer.toString(), (System.currentTimeMillis() - start) / 1000);
+        }
+        else {
+            notifyPlayer("blazemap.rerender.cancelled", layer.toString());
+        }
+        BlazeMap.LOGGER.info("Rerender of layer {} stopped after {} of {} regions", layer, done, regions.size());
+    }
+
+    private static void notifyPlayer(String key, Object... args) {
+        BlazeMapEngine.async().runOnGameThread(() -> {
+            var player = Helpers.getPlayer();
+            if(player != null) {
+                player.displayClientMessage(new TranslatableComponent(key, args), false);
+            }
+        });
+    }
+}
@@ -33,6 +33,17 @@ public class DebouncingDomain<T> {
         }
     }
 
+    /**
+     * Removes and returns everything queued, without running the callback.
+     */
+    public Set<T> drain() {
+        synchronized(queue) {
+            Set<T> all = new HashSet<>(queue.keySet());
+            queue.clear();
+            return all;
+        }
+    }
+
     public boolean remove(T key) {
         synchronized(queue) {
             return queue.remove(key) != null;
@@ -0,0 +1,160 @@
+package com.eerussianguy.blazemap.engine.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.util.Lz4;
+
+/**
+ * One file per region holding raw chunk pixels, each chunk LZ4 compressed and guarded by a CRC32 of its pixels.
+ * A corrupted chunk is dropped on read without losing the rest of the region, a truncated file keeps the chunks
+ * before the cut, and a file with a bad header is moved aside and the region treated as absent.
+ * <p>
+ * Layout: magic, version, presence bitmap (16 longs), then for every present chunk in index order
+ * its compressed length, checksum and compressed bytes. Pixels are stored little endian.
+ */
+public class BinaryTileStorage implements TileStorage {
+    public static final String EXTENSION = ".bmt";
+    private static final int MAGIC = 0x424D5254; // BMRT
+    private static final int VERSION = 1;
+    private static final int CHUNK_BYTES = 256 * 4;
+
+    private final File dir;
+    private final TileStorage legacy;
+
+    /**
+     * @param legacy read from when a region has no file in this format yet, may be null.
+     */
+    public BinaryTileStorage(File dir, TileStorage legacy) {
+        this.dir = dir;
+        this.legacy = legacy;
+    }
+
+    @Override
+    public boolean read(RegionPos region, ChunkSink sink) throws IOException {
+        File file = getFile(region);
+        if(!file.exists()) {
+            return legacy != null && legacy.read(region, sink);
+        }
+
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            long[] presence = new long[16];
+            try {
+                if(in.readInt() != MAGIC) throw new IOException("Not a region tile");
+                int version = in.readUnsignedShort();
+                if(version != VERSION) throw new IOException("Unknown region tile version " + version);
+                for(int i = 0; i < presence.length; i++) {
+                    presence[i] = in.readLong();
+                }
+            }
+            catch(IOException e) {
+                BlazeMap.LOGGER.error("Unreadable region tile {}, moving it aside", file, e);
+                Files.move(file.toPath(), new File(dir, file.getName() + ".corrupt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return legacy != null && legacy.read(region, sink);
+            }
+
+            byte[] raw = new byte[CHUNK_BYTES];
+            byte[] compressed = new byte[Lz4.maxCompressedLength(CHUNK_BYTES)];
+            CRC32 crc = new CRC32();
+            for(int index = 0; index < 1024; index++) {
+                if((presence[index >> 6] & (1L << (index & 63))) == 0) continue;
+                int length, checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if(length < 0 || length > compressed.length) throw new IOException("Bad chunk length " + length);
+                    in.readFully(compressed, 0, length);
+                }
+                catch(IOException e) {
+                    // nothing after a truncated or misaligned chunk can be located, keep what was read so far
+                    BlazeMap.LOGGER.warn("Region tile {} is damaged from chunk {} on, dropping the rest", file, index, e);
+                    break;
+                }
+
+                try {
+                    Lz4.decompress(compressed, 0, length, raw, CHUNK_BYTES);
+                }
+                catch(IOException e) {
+                    BlazeMap.LOGGER.warn("Dropping corrupted chunk {} of region tile {}", index, file, e);
+                    continue;
+                }
+                crc.reset();
+                crc.update(raw);
+                if((int) crc.getValue() != checksum) {
+                    BlazeMap.LOGGER.warn("Dropping chunk {} of region tile {}: checksum mismatch", index, file);
+                    continue;
+                }
+
+                int[] pixels = new int[256];
+                ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels);
+                sink.accept(index, pixels);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void write(RegionPos region, long[] presence, long[] changed, ChunkSource source) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        for(long word : presence) {
+            out.writeLong(word);
+        }
+
+        int[] pixels = new int[256];
+        byte[] raw = new byte[CHUNK_BYTES];
+        IntBuffer rawInts = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        byte[] compressed = new byte[Lz4.maxCompressedLength(CHUNK_BYTES)];
+        CRC32 crc = new CRC32();
+        for(int index = 0; index < 1024; index++) {
+            if((presence[index >> 6] & (1L << (index & 63))) == 0) continue;
+            source.get(index, pixels);
+            rawInts.clear();
+            rawInts.put(pixels);
+            crc.reset();
+            crc.update(raw);
+            int length = Lz4.compress(raw, CHUNK_BYTES, compressed);
+            out.writeInt(length);
+            out.writeInt((int) crc.getValue());
+            out.write(compressed, 0, length);
+        }
+        out.flush();
+
+        dir.mkdirs();
+        File file = getFile(region);
+        File temp = new File(dir, file.getName() + ".tmp");
+        Files.write(temp.toPath(), buffer.toByteArray());
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if(legacy != null) {
+            legacy.delete(region); // superseded, must not be read back if the format is switched again
+        }
+    }
+
+    @Override
+    public void delete(RegionPos region) throws IOException {
+        Files.deleteIfExists(getFile(region).toPath());
+        if(legacy != null) {
+            legacy.delete(region);
+        }
+    }
+
+    @Override
+    public void close() {
+        if(legacy != null) {
+            legacy.close();
+        }
+    }
+
+    public File getFile(RegionPos region) {
+        return new File(dir, region.toString() + EXTENSION);
+    }
+}
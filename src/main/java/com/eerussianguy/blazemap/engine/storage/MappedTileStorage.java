@@ -0,0 +1,376 @@
+package com.eerussianguy.blazemap.engine.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import com.eerussianguy.blazemap.BlazeMap;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Keeps every region of a layer in a single memory mapped file made of fixed size slots, so loading a region
+ * is a page-in and saving a chunk is a 1 KiB copy in place. Only changed chunks are written.
+ * <p>
+ * The file starts with a 4 KiB header, followed by slots. Each slot has a 4 KiB index header (magic, region,
+ * presence bitmap) and 1024 raw chunks of 256 little endian ABGR pixels. The index is rebuilt from the slot headers
+ * when the file is opened, which is also when free slots are compacted away if they take up too much of the file.
+ * Deleting a region frees its slot for the next region added.
+ * The file grows by mapping more segments of a few slots as regions are added.
+ * <p>
+ * Concurrent reads and writes of different regions are allowed. Callers must not read and write the same region
+ * at the same time, which LayerRegionTile already guarantees with its own lock.
+ */
+public class MappedTileStorage implements TileStorage {
+    public static final String FILE_NAME = "tiles.bmm";
+    private static final int MAGIC = 0x424D4D46; // BMMF
+    private static final int SLOT_MAGIC = 0x424D534C; // BMSL
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4096;
+    private static final int CHUNK_BYTES = 256 * 4;
+    private static final int SLOT_BYTES = HEADER_BYTES + 1024 * CHUNK_BYTES;
+    private static final int SEGMENT_SLOTS = 4; // about 4 MiB
+    private static final int PRESENCE_OFFSET = 16;
+    private static final double COMPACT_THRESHOLD = 0.25;
+
+    private final File dir;
+    private final TileStorage legacy;
+    private final ReentrantReadWriteLock structure = new ReentrantReadWriteLock();
+    private final Long2IntOpenHashMap index = new Long2IntOpenHashMap();
+    private final BitSet used = new BitSet();
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private FileChannel channel;
+    private int slotCount;
+    private volatile boolean opened = false;
+
+    /**
+     * @param legacy read from when a region is not in the file yet, may be null.
+     */
+    public MappedTileStorage(File dir, TileStorage legacy) {
+        this.dir = dir;
+        this.legacy = legacy;
+        this.index.defaultReturnValue(-1);
+    }
+
+    @Override
+    public boolean read(RegionPos region, ChunkSink sink) throws IOException {
+        ensureOpen();
+        structure.readLock().lock();
+        try {
+            int slot = index.get(region.toLong());
+            if(slot >= 0) {
+                ByteBuffer buffer = getSlot(slot);
+                IntBuffer data = buffer.slice(HEADER_BYTES, SLOT_BYTES - HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                for(int chunk = 0; chunk < 1024; chunk++) {
+                    long word = buffer.getLong(PRESENCE_OFFSET + (chunk >> 6) * 8);
+                    if((word & (1L << (chunk & 63))) == 0) continue;
+                    int[] pixels = new int[256];
+                    data.get(chunk << 8, pixels);
+                    sink.accept(chunk, pixels);
+                }
+                return true;
+            }
+        }
+        finally {
+            structure.readLock().unlock();
+        }
+        return legacy != null && legacy.read(region, sink);
+    }
+
+    @Override
+    public void write(RegionPos region, long[] presence, long[] changed, ChunkSource source) throws IOException {
+        ensureOpen();
+        long key = region.toLong();
+        structure.readLock().lock();
+        try {
+            int slot = index.get(key);
+            boolean fresh = slot < 0; // a new slot holds none of the unchanged chunks yet
+            if(slot < 0) {
+                structure.readLock().unlock();
+                structure.writeLock().lock();
+                try {
+                    slot = index.get(key);
+                    if(slot < 0) {
+                        slot = allocate(key);
+                    }
+                }
+                finally {
+                    structure.readLock().lock(); // downgrade
+                    structure.writeLock().unlock();
+                }
+            }
+
+            // Pixels go in before the presence bitmap, so a torn write never exposes chunks that were not written.
+            ByteBuffer buffer = getSlot(slot);
+            IntBuffer data = buffer.slice(HEADER_BYTES, SLOT_BYTES - HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            int[] pixels = new int[256];
+            for(int chunk = 0; chunk < 1024; chunk++) {
+                long bit = 1L << (chunk & 63);
+                if((presence[chunk >> 6] & bit) == 0) continue;
+                if(!fresh && (changed[chunk >> 6] & bit) == 0) continue;
+                source.get(chunk, pixels);
+                data.put(chunk << 8, pixels);
+            }
+            for(int i = 0; i < presence.length; i++) {
+                buffer.putLong(PRESENCE_OFFSET + i * 8, presence[i]);
+            }
+        }
+        finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(RegionPos region) throws IOException {
+        ensureOpen();
+        structure.writeLock().lock();
+        try {
+            int slot = index.remove(region.toLong());
+            if(slot >= 0) {
+                getSlot(slot).putInt(0, 0); // without its magic the slot is skipped when the index is rebuilt
+                used.clear(slot);
+            }
+        }
+        finally {
+            structure.writeLock().unlock();
+        }
+        if(legacy != null) {
+            legacy.delete(region);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if(!opened) return;
+        structure.readLock().lock();
+        try {
+            for(MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+        finally {
+            structure.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes and drops the mappings and the channel. The mappings are only unmapped once collected.
+     */
+    @Override
+    public void close() {
+        structure.writeLock().lock();
+        try {
+            if(!opened) return;
+            for(MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            segments.clear();
+            index.clear();
+            used.clear();
+            slotCount = 0;
+            opened = false;
+            try {
+                channel.close();
+            }
+            catch(IOException e) {
+                BlazeMap.LOGGER.warn("Could not close region tile store in {}", dir, e);
+            }
+            channel = null;
+        }
+        finally {
+            structure.writeLock().unlock();
+        }
+        if(legacy != null) {
+            legacy.close();
+        }
+    }
+
+    // Must hold the write lock. Reuses the lowest free slot, growing the file if there is none.
+    private int allocate(long key) throws IOException {
+        int slot = used.nextClearBit(0);
+        used.set(slot);
+        slotCount = Math.max(slotCount, slot + 1);
+        mapSegments();
+        ByteBuffer buffer = getSlot(slot);
+        for(int i = 0; i < 16; i++) {
+            buffer.putLong(PRESENCE_OFFSET + i * 8, 0L);
+        }
+        buffer.putLong(8, key);
+        buffer.putInt(0, SLOT_MAGIC);
+        index.put(key, slot);
+        return slot;
+    }
+
+    // Must hold a lock
+    private ByteBuffer getSlot(int slot) {
+        ByteBuffer segment = segments.get(slot / SEGMENT_SLOTS);
+        return segment.slice((slot % SEGMENT_SLOTS) * SLOT_BYTES, SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Must hold the write lock. Mapping past the end of the file grows it.
+    private void mapSegments() throws IOException {
+        int needed = (slotCount + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS;
+        while(segments.size() < needed) {
+            long offset = HEADER_BYTES + (long) segments.size() * SEGMENT_SLOTS * SLOT_BYTES;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) SEGMENT_SLOTS * SLOT_BYTES));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if(opened) return;
+        structure.writeLock().lock();
+        try {
+            if(opened) return;
+            try {
+                open();
+            }
+            catch(IOException e) {
+                // Do not leak the channel of a file that failed to open, the next access tries again
+                segments.clear();
+                index.clear();
+                used.clear();
+                slotCount = 0;
+                if(channel != null) {
+                    try {
+                        channel.close();
+                    }
+                    catch(IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    channel = null;
+                }
+                throw e;
+            }
+            opened = true;
+        }
+        finally {
+            structure.writeLock().unlock();
+        }
+    }
+
+    // Must hold the write lock
+    private void open() throws IOException {
+        dir.mkdirs();
+        File file = new File(dir, FILE_NAME);
+        channel = FileChannel.open(file.toPath(), READ, WRITE, CREATE);
+
+        ByteBuffer header = ByteBuffer.allocate(12);
+        if(channel.size() < HEADER_BYTES) {
+            header.putInt(MAGIC).putInt(VERSION).putInt(SLOT_BYTES).flip();
+            channel.write(header, 0);
+            channel.write(ByteBuffer.allocate(1), HEADER_BYTES - 1);
+        }
+        else {
+            channel.read(header, 0);
+            header.flip();
+            if(header.getInt() != MAGIC) throw new IOException("Not a region tile store: " + file);
+            int version = header.getInt();
+            if(version != VERSION) throw new IOException("Unknown region tile store version " + version + ": " + file);
+            if(header.getInt() != SLOT_BYTES) throw new IOException("Mismatched slot size: " + file);
+        }
+
+        // Rebuild the index from the slot headers
+        slotCount = (int) ((channel.size() - HEADER_BYTES) / SLOT_BYTES);
+        ByteBuffer slotHeader = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        for(int slot = 0; slot < slotCount; slot++) {
+            slotHeader.clear();
+            readFully(slotHeader, slotOffset(slot));
+            if(slotHeader.getInt(0) != SLOT_MAGIC) continue;
+            long key = slotHeader.getLong(8);
+            if(index.containsKey(key)) {
+                BlazeMap.LOGGER.warn("Ignoring duplicate slot {} for region {} in {}", slot, key, file);
+                continue;
+            }
+            index.put(key, slot);
+            used.set(slot);
+        }
+
+        compact(file);
+        mapSegments();
+    }
+
+    // Must hold the write lock, before anything is mapped. Moves slots from the end of the file into free ones.
+    private void compact(File file) throws IOException {
+        int end = used.previousSetBit(slotCount - 1) + 1;
+        int free = end - used.cardinality();
+        if(free == 0 || free < end * COMPACT_THRESHOLD) return;
+
+        // Slot bodies are copied first and their magic written only once they reached the disk, so a crash midway
+        // never leaves a partial copy that looks valid. Holes can be duplicates ignored on open, which still have
+        // their magic, so that is cleared before anything else. A crash can leave duplicates of the moved slots,
+        // where the lower one is complete and wins on the next open.
+        List<Integer> holes = new ArrayList<>(), tails = new ArrayList<>();
+        int hole = used.nextClearBit(0);
+        int tail = end - 1;
+        while(tail > hole) {
+            holes.add(hole);
+            tails.add(tail);
+            hole = used.nextClearBit(hole + 1);
+            tail = used.previousSetBit(tail - 1);
+        }
+        for(int slot : holes) {
+            writeMagic(slot, 0);
+        }
+        channel.force(false);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for(int i = 0; i < holes.size(); i++) {
+            buffer.clear();
+            readFully(buffer, slotOffset(tails.get(i)));
+            buffer.position(4);
+            writeFully(buffer, slotOffset(holes.get(i)));
+            index.put(buffer.getLong(8), (int) holes.get(i));
+            used.set(holes.get(i));
+            used.clear(tails.get(i));
+        }
+        channel.force(false);
+
+        for(int slot : holes) {
+            writeMagic(slot, SLOT_MAGIC);
+        }
+        channel.force(false);
+        int moved = holes.size();
+        slotCount = used.previousSetBit(slotCount - 1) + 1;
+        try {
+            channel.truncate(slotOffset(slotCount));
+        }
+        catch(IOException e) {
+            BlazeMap.LOGGER.warn("Could not shrink region tile store {}", file, e);
+        }
+        BlazeMap.LOGGER.info("Compacted region tile store {}: moved {} regions, freed {} slots", file, moved, free);
+    }
+
+    private void writeMagic(int slot, int magic) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(magic).flip();
+        writeFully(buffer, slotOffset(slot));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static long slotOffset(int slot) {
+        return HEADER_BYTES + (long) slot * SLOT_BYTES;
+    }
+}
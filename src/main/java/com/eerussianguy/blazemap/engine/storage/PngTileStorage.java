@@ -0,0 +1,97 @@
+package com.eerussianguy.blazemap.engine.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.util.ImageHelper;
+import com.mojang.blaze3d.platform.NativeImage;
+
+/**
+ * One 512x512 PNG per region. Fully transparent chunks are treated as absent.
+ * Also used to export layers as images, see CartographyPipeline.exportLayer().
+ */
+public class PngTileStorage implements TileStorage {
+    public static final String EXTENSION = ".png";
+
+    private final File dir;
+    private final TileStorage legacy;
+
+    /**
+     * @param legacy read from when a region has no image yet, may be null.
+     */
+    public PngTileStorage(File dir, TileStorage legacy) {
+        this.dir = dir;
+        this.legacy = legacy;
+    }
+
+    @Override
+    public boolean read(RegionPos region, ChunkSink sink) throws IOException {
+        File file = getFile(region);
+        if(!file.exists()) {
+            return legacy != null && legacy.read(region, sink);
+        }
+        try(InputStream stream = Files.newInputStream(file.toPath()); NativeImage image = NativeImage.read(stream)) {
+            for(int index = 0; index < 1024; index++) {
+                int x = (index & 31) << 4, y = (index >> 5) << 4;
+                int[] pixels = new int[256];
+                for(int row = 0; row < 16; row++) {
+                    ImageHelper.readRow(image, x, y + row, pixels, row << 4, 16);
+                }
+                if(isTransparent(pixels)) continue;
+                sink.accept(index, pixels);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void write(RegionPos region, long[] presence, long[] changed, ChunkSource source) throws IOException {
+        int size = IRegionTileView.SIZE;
+        try(NativeImage image = new NativeImage(NativeImage.Format.RGBA, size, size, true)) {
+            int[] pixels = new int[256];
+            for(int index = 0; index < 1024; index++) {
+                if((presence[index >> 6] & (1L << (index & 63))) == 0) continue;
+                source.get(index, pixels);
+                int x = (index & 31) << 4, y = (index >> 5) << 4;
+                for(int row = 0; row < 16; row++) {
+                    ImageHelper.writeRow(image, x, y + row, pixels, row << 4, 16);
+                }
+            }
+            dir.mkdirs();
+            image.writeToFile(getFile(region));
+        }
+        if(legacy != null) {
+            legacy.delete(region); // superseded, must not be read back if the format is switched again
+        }
+    }
+
+    @Override
+    public void delete(RegionPos region) throws IOException {
+        Files.deleteIfExists(getFile(region).toPath());
+        if(legacy != null) {
+            legacy.delete(region);
+        }
+    }
+
+    @Override
+    public void close() {
+        if(legacy != null) {
+            legacy.close();
+        }
+    }
+
+    public File getFile(RegionPos region) {
+        return new File(dir, region.toString() + EXTENSION);
+    }
+
+    private static boolean isTransparent(int[] pixels) {
+        for(int pixel : pixels) {
+            if((pixel & 0xFF000000) != 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package com.eerussianguy.blazemap.engine.storage;
+
+import java.io.File;
+
+public enum TileFormat {
+    /** Plain PNG images, slow to write but readable by anything. Reads BINARY tiles, so switching back keeps them. */
+    PNG,
+
+    /** Raw pixels with LZ4 compression and per-chunk checksums. Reads PNG tiles left by older versions. */
+    BINARY,
+
+    /** All regions of a layer in one memory mapped file of raw pixels. Reads tiles left in the other formats. */
+    MAPPED;
+
+    public TileStorage create(File layerDir) {
+        return switch(this) {
+            case PNG -> new PngTileStorage(layerDir, new BinaryTileStorage(layerDir, null));
+            case BINARY -> new BinaryTileStorage(layerDir, new PngTileStorage(layerDir, null));
+            case MAPPED -> new MappedTileStorage(layerDir, new BinaryTileStorage(layerDir, new PngTileStorage(layerDir, null)));
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.eerussianguy.blazemap.engine.storage;
+
+import java.io.IOException;
+
+import com.eerussianguy.blazemap.api.util.RegionPos;
+
+/**
+ * Persists the pixels of one layer, region by region. Pixels are exchanged per chunk as arrays of 256 ABGR ints,
+ * row major. Chunks are indexed (localZ << 5) | localX and listed in a 1024 bit presence bitmap.
+ */
+public interface TileStorage {
+    /**
+     * @return false if nothing is stored for this region.
+     */
+    boolean read(RegionPos region, ChunkSink sink) throws IOException;
+
+    /**
+     * @param changed chunks modified since the last write. Formats that can update chunks in place only write
+     *                these, the rest rewrite the whole region. Absent chunks are never read from the source.
+     */
+    void write(RegionPos region, long[] presence, long[] changed, ChunkSource source) throws IOException;
+
+    /**
+     * Removes the region, also from the legacy storage it is read from if there is one, so it reads as absent.
+     */
+    void delete(RegionPos region) throws IOException;
+
+    /**
+     * Makes sure everything written so far reaches the disk.
+     */
+    default void flush() {}
+
+    /**
+     * Releases the files held open. The storage can still be used afterwards, it opens them again when needed.
+     */
+    default void close() {}
+
+    @FunctionalInterface
+    interface ChunkSink {
+        /** The array belongs to the sink. */
+        void accept(int index, int[] pixels);
+    }
+
+    @FunctionalInterface
+    interface ChunkSource {
+        void get(int index, int[] pixels);
+    }
+}
@@ -9,7 +9,13 @@ import net.minecraft.core.BlockPos;
 import net.minecraftforge.client.gui.ForgeIngameGui;
 import net.minecraftforge.common.MinecraftForge;
 
+import com.eerussianguy.blazemap.BlazeMapConfig;
 import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.engine.BlazeMapEngine;
+import com.eerussianguy.blazemap.engine.RegionTileCache;
+import com.eerussianguy.blazemap.engine.RerenderJob;
+import com.eerussianguy.blazemap.feature.maps.CompositeTileCache;
+import com.eerussianguy.blazemap.feature.maps.MapRenderer;
 import com.eerussianguy.blazemap.feature.maps.WorldMapGui;
 import com.eerussianguy.blazemap.util.Helpers;
 import com.eerussianguy.blazemap.util.Profiler;
@@ -28,8 +34,13 @@ public class ProfilingRenderer {
     public void draw(PoseStack stack, MultiBufferSource buffers, ForgeIngameGui gui, int width, int height) {
         // ping load profilers
         Profilers.Engine.COLLECTOR_LOAD_PROFILER.ping();
+        Profilers.Engine.DIFF_HIT_PROFILER.ping();
+        Profilers.Engine.DIFF_MISS_PROFILER.ping();
+        Profilers.Engine.COLOR_CACHE_HIT_PROFILER.ping();
+        Profilers.Engine.COLOR_CACHE_MISS_PROFILER.ping();
         Profilers.Engine.LAYER_LOAD_PROFILER.ping();
         Profilers.Engine.REGION_LOAD_PROFILER.ping();
+        Profilers.Engine.REGION_EVICT_PROFILER.ping();
         Profilers.Engine.PROCESSOR_LOAD_PROFILER.ping();
         Profilers.Minimap.TEXTURE_LOAD_PROFILER.ping();
 
@@ -55,7 +66,7 @@ public class ProfilingRenderer {
     private void drawProfilingInfo(PoseStack stack, MultiBufferSource buffers, Font fontRenderer, BlockPos pos) {
         Matrix4f matrix = stack.last().pose();
 
-        float w = 250, h = 325, o = 0;
+        float w = 250, h = 415, o = 0;
         RenderHelper.fillRect(buffers, matrix, w, h, 0x80000000);
 
         float y = 5F;
@@ -68,9 +79,31 @@ public class ProfilingRenderer {
         // Cartography Pipeline Profiling
         fontRenderer.drawInBatch("Cartography Pipeline", 5F, y += 30, 0x0088FF, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
         y = drawSubsystem(Profilers.Engine.COLLECTOR_LOAD_PROFILER, Profilers.Engine.COLLECTOR_TIME_PROFILER, y + 10, "MD Collect         [ last second ]", fontRenderer, matrix, buffers, "tick load");
+        drawTimeProfiler(Profilers.Engine.SNAPSHOT_TIME_PROFILER, y += 5, "    Snapshot", fontRenderer, matrix, buffers);
+        drawHitRate(Profilers.Engine.DIFF_HIT_PROFILER, Profilers.Engine.DIFF_MISS_PROFILER, y += 10, "    MD Diff", fontRenderer, matrix, buffers);
+        drawHitRate(Profilers.Engine.COLOR_CACHE_HIT_PROFILER, Profilers.Engine.COLOR_CACHE_MISS_PROFILER, y += 10, "    Fixed Colors", fontRenderer, matrix, buffers);
+        drawBudget(Profilers.Engine.COLLECTOR_BUDGET_PROFILER, BlazeMapConfig.CLIENT.engine.collectionBudget.get(), BlazeMapEngine.getCollectionBacklog(), y += 10, "    Budget", fontRenderer, matrix, buffers);
+        y += 20;
         y = drawSubsystem(Profilers.Engine.LAYER_LOAD_PROFILER, Profilers.Engine.LAYER_TIME_PROFILER, y + 10, "Layer Render         [ last second ]", fontRenderer, matrix, buffers, "delay");
         y = drawSubsystem(Profilers.Engine.PROCESSOR_LOAD_PROFILER, Profilers.Engine.PROCESSOR_TIME_PROFILER, y + 10, "Data Processing     [ last second ]", fontRenderer, matrix, buffers, "delay");
         y = drawSubsystem(Profilers.Engine.REGION_LOAD_PROFILER, Profilers.Engine.REGION_TIME_PROFILER, y + 10, "Region Save         [ last minute ]", fontRenderer, matrix, buffers, "delay");
+        double mib = 1024D * 1024D;
+        RegionTileCache cache = BlazeMapEngine.getRegionCache();
+        if(cache != null) {
+            String usage = String.format("Region Cache: %.0f / %.0f MiB  |  %d tiles  |  %.2f evict/s", cache.getResidentBytes() / mib, cache.getBudget() / mib, cache.size(), Profilers.Engine.REGION_EVICT_PROFILER.getAvg());
+            fontRenderer.drawInBatch(usage, 5F, y += 5, 0xCCCCCC, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
+            y += 5;
+        }
+        CompositeTileCache composites = MapRenderer.getCompositeCache();
+        String compositeUsage = String.format("Composites: %.0f / %.0f MiB  |  %d regions", composites.getResidentBytes() / mib, composites.getBudget() / mib, composites.size());
+        fontRenderer.drawInBatch(compositeUsage, 5F, y += 5, 0xCCCCCC, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
+        y += 5;
+
+        RerenderJob job = BlazeMapEngine.getRerenderJob();
+        if(job != null && job.isRunning()) {
+            String progress = String.format("Rerender %s: %d / %d regions (%.1f%%)", job.layer, job.getDone(), job.getTotal(), job.getProgress() * 100);
+            fontRenderer.drawInBatch(progress, 5F, y + 5, 0xFFAA00, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
+        }
     }
 
     public static float drawSubsystem(Profiler.LoadProfiler load, Profiler.TimeProfiler time, float y, String label, Font fontRenderer, Matrix4f matrix, MultiBufferSource buffers, String type) {
@@ -100,6 +133,21 @@ public class ProfilingRenderer {
         fontRenderer.drawInBatch(time, 5F, y, 0xFFFFAA, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
     }
 
+    public static void drawBudget(Profiler.TimeProfiler time, double budgetMillis, int backlog, float y, String label, Font fontRenderer, Matrix4f matrix, MultiBufferSource buffers) {
+        double used = time.getAvg() / 1_000_000D;
+        String usage = String.format("%s: %.2fms / %.2fms per frame  |  %.0f%%", label, used, budgetMillis, 100 * used / budgetMillis);
+        fontRenderer.drawInBatch(usage, 5F, y, 0xAAFFAA, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
+        fontRenderer.drawInBatch(String.format("    Backlog: %d chunks", backlog), 5F, y + 10, 0xAAFFAA, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
+    }
+
+    public static void drawHitRate(Profiler.LoadProfiler hits, Profiler.LoadProfiler misses, float y, String label, Font fontRenderer, Matrix4f matrix, MultiBufferSource buffers) {
+        double h = hits.getAvg(), m = misses.getAvg();
+        double p = h + m > 0 ? 100 * h / (h + m) : 0;
+        String u = hits.unit;
+        String rate = String.format("%s: %.2f hit/%s  %.2f miss/%s  |  %.1f%% hit", label, h, u, m, u, p);
+        fontRenderer.drawInBatch(rate, 5F, y, 0xAAFFAA, false, matrix, buffers, false, 0, LightTexture.FULL_BRIGHT);
+    }
+
     public static void drawLoadProfiler(Profiler.LoadProfiler profiler, float y, String label, Font fontRenderer, Matrix4f matrix, MultiBufferSource buffers) {
         String u = profiler.unit;
         String load = String.format("%s: %.2f\u0394/%s [ %.0f\u0394/%s - %.0f\u0394/%s ]", label, profiler.getAvg(), u, profiler.getMin(), u, profiler.getMax(), u);
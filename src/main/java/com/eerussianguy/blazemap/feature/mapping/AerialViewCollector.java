@@ -2,52 +2,82 @@ package com.eerussianguy.blazemap.feature.mapping;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.color.block.BlockColors;
-import net.minecraft.world.level.Level;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.levelgen.Heightmap;
-import net.minecraft.world.level.material.MaterialColor;
 
 import com.eerussianguy.blazemap.api.BlazeMapReferences;
 import com.eerussianguy.blazemap.api.builtin.BlockColorMD;
-import com.eerussianguy.blazemap.api.mapping.Collector;
+import com.eerussianguy.blazemap.api.builtin.ChunkLayout;
+import com.eerussianguy.blazemap.api.mapping.ColumnCollector;
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
+import com.eerussianguy.blazemap.api.util.ILevelView;
 
-public class AerialViewCollector extends Collector<BlockColorMD> {
+public class AerialViewCollector extends ColumnCollector<BlockColorMD> {
 
     public AerialViewCollector() {
         super(BlazeMapReferences.Collectors.BLOCK_COLOR);
     }
 
     @Override
-    public BlockColorMD collect(Level level, int minX, int minZ, int maxX, int maxZ) {
-        final int[][] colors = new int[16][16];
-        final BlockColors blockColors = Minecraft.getInstance().getBlockColors();
-
-
-        for(int x = 0; x < 16; x++) {
-            for(int z = 0; z < 16; z++) {
-                int y = level.getHeight(Heightmap.Types.MOTION_BLOCKING, minX + x, minZ + z);
-
-                int color = -1;
-                while(color == 0 || color == -1) {
-                    POS.set(x + minX, y, z + minZ);
-                    final BlockState state = level.getBlockState(POS);
-                    color = blockColors.getColor(state, level, POS, 0);
-                    if(color <= 0) {
-                        MaterialColor mapColor = state.getMapColor(level, POS);
-                        if(mapColor != MaterialColor.NONE) {
-                            color = mapColor.col;
-                        }
-                    }
-                    y--;
-                    if(y <= level.getMinBuildHeight()) {
-                        break;
-                    }
-                }
-                if(color != 0 && color != -1) {
-                    colors[x][z] = color;
+    public Visitor<BlockColorMD> begin(ILevelView level, int minX, int minZ) {
+        return new Scan(level, minX, minZ);
+    }
+
+    @Override
+    public BlockColorMD deserialize(CompoundTag nbt) {
+        return BlockColorMD.deserialize(nbt);
+    }
+
+    // Takes the color of the first block with one, starting at the motion blocking surface.
+    private static class Scan implements Visitor<BlockColorMD> {
+        private final ILevelView level;
+        private final BlockColors blockColors = Minecraft.getInstance().getBlockColors();
+        private final BlockColorCache colorCache = BlockColorCache.get();
+        private final int minX, minZ, floor;
+        private final int[] colors = new int[ChunkLayout.SIZE];
+        private int color;
+
+        private Scan(ILevelView level, int minX, int minZ) {
+            this.level = level;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.floor = level.getMinBuildHeight();
+        }
+
+        @Override
+        public int startColumn(int x, int z) {
+            color = 0;
+            return level.getHeight(Heightmap.Types.MOTION_BLOCKING, minX + x, minZ + z);
+        }
+
+        @Override
+        public boolean visit(BlockState state, BlockPos pos) {
+            // Untinted blocks always get -1 from BlockColors, skip straight to the cached map color
+            int color = BlockStateTable.is(state, BlockStateTable.TINTED) ? colorCache.getColor(blockColors, level, state, pos) : -1;
+            if(color <= 0) {
+                int mapColor = BlockStateTable.getMapColor(state, level, pos);
+                if(mapColor != BlockStateTable.NO_COLOR) {
+                    color = mapColor;
                 }
             }
+            if(color != 0 && color != -1) {
+                this.color = color;
+                return false;
+            }
+            return pos.getY() - 1 > floor;
+        }
+
+        @Override
+        public void endColumn(int x, int z) {
+            colors[ChunkLayout.index(x, z)] = color;
+        }
+
+        @Override
+        public BlockColorMD finish() {
+            colorCache.flushMetrics();
+            return new BlockColorMD(colors);
         }
-        return new BlockColorMD(colors);
     }
 }
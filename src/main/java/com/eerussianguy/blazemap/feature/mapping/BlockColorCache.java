@@ -0,0 +1,136 @@
+package com.eerussianguy.blazemap.feature.mapping;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.minecraft.client.color.block.BlockColors;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.BlockAndTintGetter;
+import net.minecraft.world.level.ColorResolver;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.lighting.LevelLightEngine;
+import net.minecraft.world.level.material.FluidState;
+
+import com.eerussianguy.blazemap.api.util.ILevelView;
+
+import static com.eerussianguy.blazemap.util.Profilers.Engine.COLOR_CACHE_HIT_PROFILER;
+import static com.eerussianguy.blazemap.util.Profilers.Engine.COLOR_CACHE_MISS_PROFILER;
+
+/**
+ * Direct-mapped cache of the colors of tinted block states that do not actually depend on the level,
+ * one per thread so lookups need no locking. Each state is resolved once through a probe that records whether
+ * the color provider queries the level: colors that query nothing (birch and spruce leaves, stems, redstone wire)
+ * are cached per state, colors that query a biome tint or anything else go through BlockColors every time,
+ * so biome blending and position dependent tints stay exactly as the level resolves them.
+ * Only lookups of cacheable states count as hits and misses. All caches are dropped on resource reload.
+ */
+public class BlockColorCache {
+    private static final int SIZE = 4096, MASK = SIZE - 1;
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+    private static final ThreadLocal<BlockColorCache> CACHE = ThreadLocal.withInitial(BlockColorCache::new);
+
+    private final BlockState[] states = new BlockState[SIZE];
+    private final boolean[] constant = new boolean[SIZE];
+    private final int[] colors = new int[SIZE];
+    private final Probe probe = new Probe();
+    private int generation = GENERATION.get();
+    private int hits, misses;
+
+    public static BlockColorCache get() {
+        BlockColorCache cache = CACHE.get();
+        int generation = GENERATION.get();
+        if(cache.generation != generation) {
+            cache.generation = generation;
+            Arrays.fill(cache.states, null);
+        }
+        return cache;
+    }
+
+    public static void invalidate() {
+        GENERATION.incrementAndGet();
+    }
+
+    public int getColor(BlockColors blockColors, ILevelView level, BlockState state, BlockPos pos) {
+        int slot = System.identityHashCode(state) & MASK;
+        if(states[slot] == state) {
+            if(!constant[slot]) return blockColors.getColor(state, level, pos, 0);
+            hits++;
+            return colors[slot];
+        }
+
+        probe.begin(level);
+        int color = blockColors.getColor(state, probe, pos, 0);
+        states[slot] = state;
+        constant[slot] = probe.queries == 0;
+        colors[slot] = color;
+        if(constant[slot]) misses++;
+        probe.begin(null);
+        return color;
+    }
+
+    /**
+     * Report the hits and misses counted since the last call to the profilers.
+     */
+    public void flushMetrics() {
+        COLOR_CACHE_HIT_PROFILER.hit(hits);
+        COLOR_CACHE_MISS_PROFILER.hit(misses);
+        hits = misses = 0;
+    }
+
+    // Passes everything through to the level, counting the queries the color provider makes.
+    private static class Probe implements BlockAndTintGetter {
+        private ILevelView level;
+        private int queries;
+
+        private void begin(ILevelView level) {
+            this.level = level;
+            this.queries = 0;
+        }
+
+        @Override
+        public int getBlockTint(BlockPos pos, ColorResolver resolver) {
+            queries++;
+            return level.getBlockTint(pos, resolver);
+        }
+
+        @Override
+        public BlockState getBlockState(BlockPos pos) {
+            queries++;
+            return level.getBlockState(pos);
+        }
+
+        @Override
+        public FluidState getFluidState(BlockPos pos) {
+            queries++;
+            return level.getFluidState(pos);
+        }
+
+        @Override
+        public BlockEntity getBlockEntity(BlockPos pos) {
+            queries++;
+            return level.getBlockEntity(pos);
+        }
+
+        @Override
+        public float getShade(Direction direction, boolean shade) {
+            return level.getShade(direction, shade);
+        }
+
+        @Override
+        public LevelLightEngine getLightEngine() {
+            return level.getLightEngine();
+        }
+
+        @Override
+        public int getHeight() {
+            return level.getHeight();
+        }
+
+        @Override
+        public int getMinBuildHeight() {
+            return level.getMinBuildHeight();
+        }
+    }
+}
@@ -25,13 +25,13 @@ public class BlockColorLayer extends Layer {
 
     @Override
     public boolean renderTile(NativeImage tile, IDataSource data) {
-        int[][] blockColors = ((BlockColorMD) data.get(BlazeMapReferences.Collectors.BLOCK_COLOR)).colors();
-        int[][] depth = ((WaterLevelMD) data.get(BlazeMapReferences.Collectors.WATER_LEVEL)).level;
+        BlockColorMD blockColors = (BlockColorMD) data.get(BlazeMapReferences.Collectors.BLOCK_COLOR);
+        WaterLevelMD water = (WaterLevelMD) data.get(BlazeMapReferences.Collectors.WATER_LEVEL);
 
-        for(int x = 0; x < 16; x++) {
-            for(int z = 0; z < 16; z++) {
-                float point = ((float) Math.min(depth[x][z], 30)) / 50F;
-                int blockColor = Colors.abgr(new Color(blockColors[x][z]));
+        for(int z = 0; z < 16; z++) {
+            for(int x = 0; x < 16; x++) {
+                float point = ((float) Math.min(water.getDepth(x, z), 30)) / 50F;
+                int blockColor = Colors.abgr(new Color(blockColors.getColor(x, z)));
                 tile.setPixelRGBA(x, z, Colors.interpolate(blockColor, 0, OPAQUE, 1, point));
             }
         }
@@ -1,47 +1,85 @@
 package com.eerussianguy.blazemap.feature.mapping;
 
-import net.minecraft.world.level.Level;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.block.state.BlockState;
 
 import com.eerussianguy.blazemap.api.BlazeMapReferences;
+import com.eerussianguy.blazemap.api.builtin.ChunkLayout;
 import com.eerussianguy.blazemap.api.builtin.TerrainHeightMD;
-import com.eerussianguy.blazemap.api.mapping.Collector;
+import com.eerussianguy.blazemap.api.mapping.ColumnCollector;
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
+import com.eerussianguy.blazemap.api.util.ILevelView;
+
+public class NetherCollector extends ColumnCollector<TerrainHeightMD> {
+    private static final int START_HEIGHT = 110;
 
-public class NetherCollector extends Collector<TerrainHeightMD> {
     public NetherCollector() {
         super(BlazeMapReferences.Collectors.NETHER);
     }
 
     @Override
-    public TerrainHeightMD collect(Level level, int minX, int minZ, int maxX, int maxZ) {
-        final int[][] heightmap = new int[16][16];
+    public Visitor<TerrainHeightMD> begin(ILevelView level, int minX, int minZ) {
+        return new Scan(level, minX, minZ);
+    }
+
+    @Override
+    public TerrainHeightMD deserialize(CompoundTag nbt) {
+        return TerrainHeightMD.deserialize(nbt);
+    }
+
+    private static boolean isNotAir(BlockState state) {
+        return !BlockStateTable.is(state, BlockStateTable.AIR);
+    }
+
+    private static boolean isNotBaseStone(BlockState state) {
+        return !BlockStateTable.is(state, BlockStateTable.SOLID);
+    }
+
+    // Sinks below the ceiling until reaching an air pocket, then through the air down to solid ground.
+    private static class Scan implements Visitor<TerrainHeightMD> {
+        private final ILevelView level;
+        private final int minX, minZ, floor;
+        private final short[] heightmap = new short[ChunkLayout.SIZE];
+        private int height;
+        private boolean foundAir;
 
-        for(int x = 0; x < 16; x++) {
-            for(int z = 0; z < 16; z++) {
-                int height = 110;
-                while(isNotAir(level, minX + x, height - 1, minZ + z)) {
+        private Scan(ILevelView level, int minX, int minZ) {
+            this.level = level;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.floor = level.getMinBuildHeight();
+        }
+
+        @Override
+        public int startColumn(int x, int z) {
+            height = START_HEIGHT;
+            foundAir = false;
+            return height - 1;
+        }
+
+        @Override
+        public boolean visit(BlockState state, BlockPos pos) {
+            if(!foundAir) {
+                if(isNotAir(state)) {
                     height--;
-                    if(height <= level.getMinBuildHeight()) break;
-                }
-                if(height > level.getMinBuildHeight()) {
-                    while(isNotBaseStone(level, minX + x, height - 1, minZ + z)) {
-                        height--;
-                        if(height <= level.getMinBuildHeight()) break;
-                    }
+                    return height > floor;
                 }
-                heightmap[x][z] = height;
+                foundAir = true;
             }
+            if(!isNotBaseStone(state)) return false;
+            height--;
+            return height > floor;
         }
 
-        return new TerrainHeightMD(level.getMinBuildHeight(), level.getMaxBuildHeight(), level.getHeight(), level.getSeaLevel(), minX, minZ, heightmap);
-    }
-
-    private boolean isNotAir(Level level, int x, int y, int z) {
-        return !level.getBlockState(POS.set(x, y, z)).isAir();
-    }
+        @Override
+        public void endColumn(int x, int z) {
+            heightmap[ChunkLayout.index(x, z)] = (short) height;
+        }
 
-    private boolean isNotBaseStone(Level level, int x, int y, int z) {
-        BlockState state = level.getBlockState(POS.set(x, y, z));
-        return !state.getMaterial().isSolid();
+        @Override
+        public TerrainHeightMD finish() {
+            return new TerrainHeightMD(floor, level.getMaxBuildHeight(), level.getHeight(), level.getSeaLevel(), minX, minZ, heightmap);
+        }
     }
 }
@@ -46,10 +46,10 @@ public class NetherLayer extends Layer {
         TerrainHeightMD terrain = (TerrainHeightMD) data.get(BlazeMapReferences.Collectors.NETHER);
         float down = -1.0F / ((float) terrain.sea - terrain.minY);
         float up = 1.0F / ((float) terrain.maxY - terrain.sea);
-        for(int x = 0; x < 16; x++) {
+        for(int z = 0; z < 16; z++) {
             next_pixel:
-            for(int z = 0; z < 16; z++) {
-                int h = terrain.heightmap[x][z];
+            for(int x = 0; x < 16; x++) {
+                int h = terrain.getHeight(x, z);
                 int height = h - terrain.sea;
                 int depth = terrain.sea - h;
                 float point = h == terrain.sea ? 0 : h < terrain.sea ? down * (depth) : up * (height);
@@ -1,47 +1,80 @@
 package com.eerussianguy.blazemap.feature.mapping;
 
-import net.minecraft.tags.BlockTags;
-import net.minecraft.world.level.Level;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.levelgen.Heightmap;
 
 import com.eerussianguy.blazemap.api.BlazeMapReferences;
+import com.eerussianguy.blazemap.api.builtin.ChunkLayout;
 import com.eerussianguy.blazemap.api.builtin.TerrainHeightMD;
-import com.eerussianguy.blazemap.api.mapping.Collector;
+import com.eerussianguy.blazemap.api.mapping.ColumnCollector;
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
+import com.eerussianguy.blazemap.api.util.ILevelView;
 
-public class TerrainHeightCollector extends Collector<TerrainHeightMD> {
+public class TerrainHeightCollector extends ColumnCollector<TerrainHeightMD> {
 
     public TerrainHeightCollector() {
         super(BlazeMapReferences.Collectors.TERRAIN_HEIGHT);
     }
 
     @Override
-    public TerrainHeightMD collect(Level level, int minX, int minZ, int maxX, int maxZ) {
-
-        final int[][] heightmap = new int[16][16];
-
-        for(int x = 0; x < 16; x++) {
-            for(int z = 0; z < 16; z++) {
-                int height = level.getHeight(Heightmap.Types.MOTION_BLOCKING, minX + x, minZ + z);
-                boolean foundLeaves = false;
-                while(isLeaves(level, minX + x, height - 1, minZ + z)) {
-                    height--;
-                    if(height <= level.getMinBuildHeight()) break;
-                    foundLeaves = true;
-                }
-                while(foundLeaves && isSkippableAfterLeaves(level, minX + x, height - 1, minZ + z)) {
-                    height--;
-                    if(height <= level.getMinBuildHeight()) break;
-                }
-                heightmap[x][z] = height;
-            }
-        }
+    public Visitor<TerrainHeightMD> begin(ILevelView level, int minX, int minZ) {
+        return new Scan(level, minX, minZ);
+    }
+
+    @Override
+    public TerrainHeightMD deserialize(CompoundTag nbt) {
+        return TerrainHeightMD.deserialize(nbt);
+    }
 
-        return new TerrainHeightMD(level.getMinBuildHeight(), level.getMaxBuildHeight(), level.getHeight(), level.getSeaLevel(), minX, minZ, heightmap);
+    protected static boolean isSkippableAfterLeaves(ILevelView level, int x, int y, int z) {
+        return isSkippableAfterLeaves(level.getBlockState(POS.get().set(x, y, z)));
     }
 
-    protected static boolean isSkippableAfterLeaves(Level level, int x, int y, int z) {
-        BlockState state = level.getBlockState(POS.set(x, y, z));
-        return state.is(BlockTags.LEAVES) || state.isAir() || state.is(BlockTags.LOGS) || state.getMaterial().isReplaceable();
+    protected static boolean isSkippableAfterLeaves(BlockState state) {
+        return BlockStateTable.is(state, BlockStateTable.SKIPPABLE_AFTER_LEAVES);
+    }
+
+    // Starts at the motion blocking surface and sinks through leaves, then through logs and foliage under them.
+    private static class Scan implements Visitor<TerrainHeightMD> {
+        private final ILevelView level;
+        private final int minX, minZ, floor;
+        private final short[] heightmap = new short[ChunkLayout.SIZE];
+        private int height;
+        private boolean foundLeaves;
+
+        private Scan(ILevelView level, int minX, int minZ) {
+            this.level = level;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.floor = level.getMinBuildHeight();
+        }
+
+        @Override
+        public int startColumn(int x, int z) {
+            height = level.getHeight(Heightmap.Types.MOTION_BLOCKING, minX + x, minZ + z);
+            foundLeaves = false;
+            return height - 1;
+        }
+
+        @Override
+        public boolean visit(BlockState state, BlockPos pos) {
+            if(!isLeaves(state) && !(foundLeaves && isSkippableAfterLeaves(state))) return false;
+            height--;
+            if(height <= floor) return false;
+            foundLeaves = true;
+            return true;
+        }
+
+        @Override
+        public void endColumn(int x, int z) {
+            heightmap[ChunkLayout.index(x, z)] = (short) height;
+        }
+
+        @Override
+        public TerrainHeightMD finish() {
+            return new TerrainHeightMD(floor, level.getMaxBuildHeight(), level.getHeight(), level.getSeaLevel(), minX, minZ, heightmap);
+        }
     }
 }
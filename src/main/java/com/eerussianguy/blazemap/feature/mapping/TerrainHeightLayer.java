@@ -56,9 +56,9 @@ public class TerrainHeightLayer extends Layer {
         WaterLevelMD water = (WaterLevelMD) data.get(BlazeMapReferences.Collectors.WATER_LEVEL);
         float down = -1.0F / ((float) terrain.sea - terrain.minY);
         float up = 1.0F / ((float) terrain.maxY - terrain.sea);
-        for(int x = 0; x < 16; x++) {
-            for(int z = 0; z < 16; z++) {
-                int h = terrain.heightmap[x][z] - water.level[x][z];
+        for(int z = 0; z < 16; z++) {
+            for(int x = 0; x < 16; x++) {
+                int h = terrain.getHeight(x, z) - water.getDepth(x, z);
                 paintGradient(tile, x, z, h, terrain.sea, down, up);
             }
         }
@@ -14,7 +14,7 @@ public class TerrainIsolinesLayer extends Layer {
 
     private static int height(TerrainHeightMD terrain, WaterLevelMD water, int x, int z, int def) {
         if(x < 0 || z < 0 || x > 15 || z > 15) return def;
-        return terrain.heightmap[x][z] - water.level[x][z];
+        return terrain.getHeight(x, z) - water.getDepth(x, z);
     }
 
     private static int delta(int h, int n, int p) {
@@ -33,9 +33,9 @@ public class TerrainIsolinesLayer extends Layer {
     public boolean renderTile(NativeImage tile, IDataSource data) {
         TerrainHeightMD terrain = (TerrainHeightMD) data.get(BlazeMapReferences.Collectors.TERRAIN_HEIGHT);
         WaterLevelMD water = (WaterLevelMD) data.get(BlazeMapReferences.Collectors.WATER_LEVEL);
-        for(int x = 0; x < 16; x++)
-            for(int z = 0; z < 16; z++) {
-                int p = 0, h = terrain.heightmap[x][z] - water.level[x][z];
+        for(int z = 0; z < 16; z++)
+            for(int x = 0; x < 16; x++) {
+                int p = 0, h = terrain.getHeight(x, z) - water.getDepth(x, z);
                 p = delta(h, height(terrain, water, x + 1, z, h), p);
                 p = delta(h, height(terrain, water, x - 1, z, h), p);
                 p = delta(h, height(terrain, water, x, z + 1, h), p);
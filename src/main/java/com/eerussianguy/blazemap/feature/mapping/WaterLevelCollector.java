@@ -1,35 +1,68 @@
 package com.eerussianguy.blazemap.feature.mapping;
 
-import net.minecraft.world.level.Level;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.levelgen.Heightmap;
 
 import com.eerussianguy.blazemap.api.BlazeMapReferences;
+import com.eerussianguy.blazemap.api.builtin.ChunkLayout;
 import com.eerussianguy.blazemap.api.builtin.WaterLevelMD;
-import com.eerussianguy.blazemap.api.mapping.Collector;
+import com.eerussianguy.blazemap.api.mapping.ColumnCollector;
+import com.eerussianguy.blazemap.api.util.ILevelView;
 
-public class WaterLevelCollector extends Collector<WaterLevelMD> {
+public class WaterLevelCollector extends ColumnCollector<WaterLevelMD> {
 
     public WaterLevelCollector() {
         super(BlazeMapReferences.Collectors.WATER_LEVEL);
     }
 
+    @Override
+    public Visitor<WaterLevelMD> begin(ILevelView level, int minX, int minZ) {
+        return new Scan(level, minX, minZ);
+    }
 
     @Override
-    public WaterLevelMD collect(Level level, int minX, int minZ, int maxX, int maxZ) {
-
-        final int[][] water = new int[16][16];
-
-        for(int x = 0; x < 16; x++) {
-            for(int z = 0; z < 16; z++) {
-                int depth = 0, height = level.getHeight(Heightmap.Types.MOTION_BLOCKING, minX + x, minZ + z) - 1;
-                while(isWater(level, minX + x, height - depth, minZ + z)) {
-                    depth++;
-                    if(height - depth < level.getMinBuildHeight()) break;
-                }
-                water[x][z] = depth;
-            }
+    public WaterLevelMD deserialize(CompoundTag nbt) {
+        return WaterLevelMD.deserialize(nbt);
+    }
+
+    // Counts the water blocks right under the motion blocking surface.
+    private static class Scan implements Visitor<WaterLevelMD> {
+        private final ILevelView level;
+        private final int minX, minZ, floor;
+        private final byte[] water = new byte[ChunkLayout.SIZE];
+        private int height, depth;
+
+        private Scan(ILevelView level, int minX, int minZ) {
+            this.level = level;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.floor = level.getMinBuildHeight();
+        }
+
+        @Override
+        public int startColumn(int x, int z) {
+            height = level.getHeight(Heightmap.Types.MOTION_BLOCKING, minX + x, minZ + z) - 1;
+            depth = 0;
+            return height;
+        }
+
+        @Override
+        public boolean visit(BlockState state, BlockPos pos) {
+            if(!isWater(state)) return false;
+            depth++;
+            return height - depth >= floor;
         }
 
-        return new WaterLevelMD(level.getSeaLevel(), minX, minZ, water);
+        @Override
+        public void endColumn(int x, int z) {
+            water[ChunkLayout.index(x, z)] = WaterLevelMD.packDepth(depth);
+        }
+
+        @Override
+        public WaterLevelMD finish() {
+            return new WaterLevelMD(level.getSeaLevel(), minX, minZ, water);
+        }
     }
 }
@@ -16,9 +16,9 @@ public class WaterLevelLayer extends Layer {
     @Override
     public boolean renderTile(NativeImage tile, IDataSource data) {
         WaterLevelMD water = (WaterLevelMD) data.get(BlazeMapReferences.Collectors.WATER_LEVEL);
-        for(int x = 0; x < 16; x++)
-            for(int z = 0; z < 16; z++) {
-                int d = water.level[x][z];
+        for(int z = 0; z < 16; z++)
+            for(int x = 0; x < 16; x++) {
+                int d = water.getDepth(x, z);
                 if(d > 0) {
                     float brightness = 1F;
                     int blue = 191, green = 95;
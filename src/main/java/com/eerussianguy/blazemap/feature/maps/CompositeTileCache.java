@@ -0,0 +1,241 @@
+package com.eerussianguy.blazemap.feature.maps;
+
+import java.util.*;
+
+import com.eerussianguy.blazemap.BlazeMapConfig;
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.event.DimensionChangedEvent.LayerTileSource;
+import com.eerussianguy.blazemap.api.mapping.Layer;
+import com.eerussianguy.blazemap.api.mapping.MapType;
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
+import com.eerussianguy.blazemap.api.util.LayerRegion;
+import com.eerussianguy.blazemap.api.util.RegionPos;
+import com.eerussianguy.blazemap.util.Colors;
+import com.eerussianguy.blazemap.util.ImageHelper;
+import com.mojang.blaze3d.platform.NativeImage;
+
+/**
+ * Regions with all visible layers of a map type already blended together, shared by every MapRenderer.
+ * Entries are keyed by map type, visible layer mask, region and level of detail, and store only non-empty chunks.
+ * Layer changes mark the affected chunks stale, which are blended again the next time the entry is used,
+ * so drawing a region that did not change is only a copy. Entries are also indexed by level of detail and region,
+ * so a layer change only visits the entries it covers. The budget is set by the compositeCacheSize config.
+ */
+public class CompositeTileCache {
+    private static final long ENTRY_OVERHEAD = 1024 * 4 + 16 * 8 + 128; // chunk references, stale bits, headers
+    private static final ThreadLocal<int[]> LAYER_PIXELS = ThreadLocal.withInitial(() -> new int[256]);
+
+    private final LinkedHashMap<CompositeKey, Composite> entries = new LinkedHashMap<>(64, 0.75F, true);
+    private final List<Map<RegionPos, List<Composite>>> byRegion = new ArrayList<>(); // indexed by level of detail
+    private long resident = 0;
+
+    /**
+     * Gets the composite of a region, blending whatever is stale first. Safe to call from several threads.
+     */
+    Composite get(RenderPlan plan, RegionPos region, int lod) {
+        CompositeKey key = new CompositeKey(plan.mapType.getID(), plan.visibility, region, lod);
+        Composite composite;
+        synchronized(this) {
+            composite = entries.get(key);
+            if(composite == null) {
+                composite = new Composite(plan.layers, region, lod);
+                entries.put(key, composite);
+                index(composite);
+                composite.charged = ENTRY_OVERHEAD; // even an empty region costs its arrays
+                resident += ENTRY_OVERHEAD;
+            }
+        }
+
+        long delta = composite.refresh(plan.sources);
+
+        synchronized(this) {
+            if(entries.get(key) == composite) {
+                composite.charged += delta;
+                resident += delta;
+            }
+            long budget = getBudget();
+            Iterator<Composite> iterator = entries.values().iterator();
+            while(resident > budget && iterator.hasNext()) {
+                Composite victim = iterator.next();
+                if(victim == composite) continue;
+                iterator.remove();
+                unindex(victim);
+                resident -= victim.charged;
+            }
+        }
+        return composite;
+    }
+
+    // Each level of detail is notified on its own once its tiles were rebuilt, so only that level's entries go stale
+    synchronized void invalidate(LayerRegion update) {
+        if(update.lod >= byRegion.size()) return;
+        List<Composite> composites = byRegion.get(update.lod).get(update.region);
+        if(composites == null) return;
+        for(Composite composite : composites) {
+            composite.invalidate(update);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        byRegion.clear();
+        resident = 0;
+    }
+
+    public synchronized long getResidentBytes() {
+        return resident;
+    }
+
+    public long getBudget() {
+        return BlazeMapConfig.CLIENT.engine.compositeCacheSize.get() * 1024L * 1024L;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Must hold the lock
+    private void index(Composite composite) {
+        while(byRegion.size() <= composite.lod) {
+            byRegion.add(new HashMap<>());
+        }
+        byRegion.get(composite.lod).computeIfAbsent(composite.region, r -> new ArrayList<>(2)).add(composite);
+    }
+
+    // Must hold the lock
+    private void unindex(Composite composite) {
+        Map<RegionPos, List<Composite>> regions = byRegion.get(composite.lod);
+        List<Composite> composites = regions.get(composite.region);
+        composites.remove(composite);
+        if(composites.isEmpty()) {
+            regions.remove(composite.region);
+        }
+    }
+
+    static class Composite {
+        private final Key<Layer>[] layers;
+        private final RegionPos region;
+        private final int lod;
+        private final int[][] chunks = new int[1024][];
+        private final long[] stale = new long[16];
+        private long size = 0;
+        private long charged = 0; // bytes counted in the cache's resident total, guarded by the cache
+
+        private Composite(Key<Layer>[] layers, RegionPos region, int lod) {
+            this.layers = layers;
+            this.region = region;
+            this.lod = lod;
+            Arrays.fill(stale, -1L);
+        }
+
+        // Blends the stale chunks again from the layers' sources, returns how much the size changed
+        private synchronized long refresh(LayerTileSource[] sources) {
+            long[] dirty = stale.clone();
+            boolean any = false;
+            for(int i = 0; i < dirty.length; i++) {
+                any |= dirty[i] != 0;
+                stale[i] = 0;
+            }
+            if(!any) return 0;
+
+            long before = size;
+            for(int i = 0; i < chunks.length; i++) {
+                if(isSet(dirty, i) && chunks[i] != null) {
+                    chunks[i] = null;
+                    size -= 256 * 4;
+                }
+            }
+            for(LayerTileSource source : sources) {
+                source.consumeTile(region, lod, view -> blend(view, dirty));
+            }
+            return size - before;
+        }
+
+        private void blend(IRegionTileView view, long[] dirty) {
+            int[] pixels = LAYER_PIXELS.get();
+            for(int i = 0; i < chunks.length; i++) {
+                int cx = i & 31, cz = i >> 5;
+                if(!isSet(dirty, i) || !view.hasChunk(cx, cz)) continue;
+                for(int y = 0; y < 16; y++) {
+                    view.readRow(cx << 4, (cz << 4) + y, pixels, y << 4, 16);
+                }
+                int[] chunk = chunks[i];
+                if(chunk == null) {
+                    chunks[i] = pixels.clone();
+                    size += 256 * 4;
+                    continue;
+                }
+                for(int p = 0; p < 256; p++) {
+                    chunk[p] = Colors.layerBlend(chunk[p], pixels[p]);
+                }
+            }
+        }
+
+        private synchronized void invalidate(LayerRegion update) {
+            if(!isBlended(update.layer)) return;
+            for(int cz = update.minChunkZ; cz <= update.maxChunkZ; cz++) {
+                for(int cx = update.minChunkX; cx <= update.maxChunkX; cx++) {
+                    int i = (cz << 5) | cx;
+                    stale[i >> 6] |= 1L << (i & 63);
+                }
+            }
+        }
+
+        /**
+         * Copies the area [x0, x1) x [y0, y1) of this region into the texture, offset by (shiftX, shiftY).
+         * Empty chunks are skipped, the texture must already be cleared there.
+         */
+        synchronized void copyTo(NativeImage texture, int shiftX, int shiftY, int x0, int y0, int x1, int y1) {
+            for(int y = y0; y < y1; y++) {
+                int cz = y >> 4;
+                int x = x0;
+                while(x < x1) {
+                    int run = Math.min(16 - (x & 15), x1 - x);
+                    int[] chunk = chunks[(cz << 5) | (x >> 4)];
+                    if(chunk != null) {
+                        ImageHelper.writeRow(texture, x + shiftX, y + shiftY, chunk, ((y & 15) << 4) | (x & 15), run);
+                    }
+                    x += run;
+                }
+            }
+        }
+
+        private boolean isBlended(Key<Layer> layer) {
+            for(Key<Layer> blended : layers) {
+                if(blended.equals(layer)) return true;
+            }
+            return false;
+        }
+
+        private static boolean isSet(long[] bits, int i) {
+            return (bits[i >> 6] & (1L << (i & 63))) != 0;
+        }
+    }
+
+    private static class CompositeKey {
+        private final Key<MapType> mapType;
+        private final long layers;
+        private final RegionPos region;
+        private final int lod;
+
+        private CompositeKey(Key<MapType> mapType, long layers, RegionPos region, int lod) {
+            this.mapType = mapType;
+            this.layers = layers;
+            this.region = region;
+            this.lod = lod;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mapType, layers, region, lod);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(o == null || getClass() != o.getClass()) return false;
+            CompositeKey that = (CompositeKey) o;
+            return layers == that.layers && lod == that.lod && Objects.equals(mapType, that.mapType) && Objects.equals(region, that.region);
+        }
+    }
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import net.minecraft.client.Minecraft;
@@ -29,12 +31,14 @@ import com.eerussianguy.blazemap.api.mapping.MapType;
 import com.eerussianguy.blazemap.api.markers.IMarkerStorage;
 import com.eerussianguy.blazemap.api.markers.MapLabel;
 import com.eerussianguy.blazemap.api.markers.Waypoint;
+import com.eerussianguy.blazemap.api.util.IRegionTileView;
 import com.eerussianguy.blazemap.api.util.LayerRegion;
 import com.eerussianguy.blazemap.api.util.RegionPos;
 import com.eerussianguy.blazemap.engine.BlazeMapEngine;
-import com.eerussianguy.blazemap.engine.async.AsyncAwaiter;
 import com.eerussianguy.blazemap.util.Colors;
+import com.eerussianguy.blazemap.util.DirtyRectTracker;
 import com.eerussianguy.blazemap.util.Helpers;
+import com.eerussianguy.blazemap.util.ImageHelper;
 import com.eerussianguy.blazemap.util.Profiler;
 import com.eerussianguy.blazemap.util.RenderHelper;
 import com.mojang.blaze3d.platform.NativeImage;
@@ -46,6 +50,7 @@ import com.mojang.math.Vector3f;
 public class MapRenderer implements AutoCloseable {
     private static final ResourceLocation PLAYER = Helpers.identifier("textures/player.png");
     private static final List<MapRenderer> RENDERERS = new ArrayList<>(4);
+    private static final CompositeTileCache COMPOSITES = new CompositeTileCache();
     private static DimensionChangedEvent.DimensionTileStorage tileStorage;
     private static ResourceKey<Level> dimension;
     private static IMarkerStorage<Waypoint> waypointStorage;
@@ -53,10 +58,12 @@ public class MapRenderer implements AutoCloseable {
 
     public static void onDimensionChange(DimensionChangedEvent evt) {
         evt.tileNotifications.addUpdateListener(MapRenderer::onTileChanged);
+        COMPOSITES.clear();
         tileStorage = evt.tileStorage;
         dimension = evt.dimension;
         waypointStorage = evt.waypoints;
         labelStorage = evt.labels;
+        RENDERERS.forEach(MapRenderer::onStorageChanged);
     }
 
     public static void onWaypointAdded(WaypointEvent.Created event) {
@@ -75,8 +82,13 @@ public class MapRenderer implements AutoCloseable {
         RENDERERS.forEach(r -> r.remove(event.label));
     }
 
+    public static CompositeTileCache getCompositeCache() {
+        return COMPOSITES;
+    }
+
     private static void onTileChanged(LayerRegion tile){
-        RENDERERS.forEach(r -> r.changed(tile.layer, tile.region));
+        COMPOSITES.invalidate(tile);
+        RENDERERS.forEach(r -> r.changed(tile));
     }
 
 
@@ -89,6 +101,7 @@ public class MapRenderer implements AutoCloseable {
 
     private MapType mapType;
     private List<BlazeRegistry.Key<Layer>> disabled, visible;
+    private RenderPlan plan;
     private final HashMap<BlazeRegistry.Key<MapType>, List<BlazeRegistry.Key<Layer>>> disabledLayers = new HashMap<>();
     private final List<Waypoint> waypoints = new ArrayList<>(16);
     private final List<MapLabel> labels = new ArrayList<>(16);
@@ -97,6 +110,10 @@ public class MapRenderer implements AutoCloseable {
     private DynamicTexture mapTexture;
     private RenderType renderType;
     private boolean needsUpdate = true;
+    private boolean uploadAll = false; // set when the texture scrolled, moving pixels outside the dirty areas
+    private boolean toroidal = false; // texture pixels wrap around at absolute positions, so pans never move them
+    private Stitch stitch;
+    private final DirtyRectTracker dirtyAreas = new DirtyRectTracker(0, 0, 8); // in texture pixels
 
     private int width, height;
     private int mapWidth, mapHeight;
@@ -104,6 +121,7 @@ public class MapRenderer implements AutoCloseable {
     private RegionPos[][] offsets;
     private final double minZoom, maxZoom;
     private double zoom = 1;
+    private int lod = 0;
     private final boolean renderNames;
 
     public MapRenderer(int width, int height, ResourceLocation textureResource, double minZoom, double maxZoom, boolean renderNames) {
@@ -111,6 +129,7 @@ public class MapRenderer implements AutoCloseable {
         this.begin = new BlockPos.MutableBlockPos();
         this.end = new BlockPos.MutableBlockPos();
         this.textureResource = textureResource;
+        this.renderType = RenderType.text(textureResource);
         this.minZoom = minZoom;
         this.maxZoom = maxZoom;
 
@@ -138,6 +157,14 @@ public class MapRenderer implements AutoCloseable {
         }
     }
 
+    // The plan was resolved against the previous dimension's tiles
+    private void onStorageChanged() {
+        selectMapType();
+        if(mapType == null) return;
+        updateVisibleLayers();
+        needsUpdate = true;
+    }
+
     public void resize(int width, int height) {
         this.width = debug.rw = width;
         this.height = debug.rh = height;
@@ -146,26 +173,27 @@ public class MapRenderer implements AutoCloseable {
         createImage();
     }
 
+    // The current texture keeps being drawn until the stitch of the new one is swapped in
     private void createImage() {
         makeOffsets();
-        if(mapTexture != null) {
-            mapTexture.close();
-        }
-        mapWidth = debug.mw = (int) (width / zoom);
-        mapHeight = debug.mh = (int) (height / zoom);
-        mapTexture = new DynamicTexture(mapWidth, mapHeight, false);
-        Minecraft.getInstance().getTextureManager().register(textureResource, mapTexture);
-        renderType = RenderType.text(textureResource);
         needsUpdate = true;
     }
 
     private void makeOffsets() {
-        this.mapWidth = (int) (width / zoom);
-        this.mapHeight = (int) (height / zoom);
+        // zoomed out past 1:1 the atlas uses the smallest level of detail that keeps it within the screen size
+        int spanW = (int) (width / zoom), spanH = (int) (height / zoom);
+        int level = 0;
+        while(level < DimensionChangedEvent.DimensionTileStorage.MAX_LOD && ((spanW >> level) > width || (spanH >> level) > height)) {
+            level++;
+        }
+        this.lod = debug.lod = level;
+
+        this.mapWidth = debug.mw = spanW >> lod;
+        this.mapHeight = debug.mh = spanH >> lod;
 
-        int w2 = mapWidth / 2, h2 = mapHeight / 2;
-        RegionPos b = new RegionPos(begin.set(center.offset(-w2, 0, -h2)));
-        RegionPos e = new RegionPos(end.set(center.offset(w2, 0, h2)));
+        int w2 = spanW / 2, h2 = spanH / 2;
+        RegionPos b = lodRegion(new RegionPos(begin.set(center.offset(-w2, 0, -h2))));
+        RegionPos e = lodRegion(new RegionPos(end.set(center.offset(w2, 0, h2))));
 
         int dx = debug.ox = e.x - b.x + 1;
         int dz = debug.oz = e.z - b.z + 1;
@@ -187,6 +215,10 @@ public class MapRenderer implements AutoCloseable {
         debug.ez = end.getZ();
     }
 
+    private RegionPos lodRegion(RegionPos region) {
+        return lod == 0 ? region : new RegionPos(region.x >> lod, region.z >> lod);
+    }
+
     public void updateWaypoints() {
         waypoints.clear();
         waypoints.addAll(waypointStorage.getAll().stream().filter(w -> inRange(w.getPosition())).collect(Collectors.toList()));
@@ -225,18 +257,47 @@ public class MapRenderer implements AutoCloseable {
         }
     }
 
-    private void changed(BlazeRegistry.Key<Layer> layer, RegionPos region){
-        if(!visible.contains(layer)) return;
+    private void changed(LayerRegion update){
+        if(update.lod != lod || !plan.contains(update.layer)) return;
+        RegionPos region = update.region;
         RegionPos r0 = offsets[0][0];
         if(r0.x > region.x || r0.z > region.z) return;
         RegionPos[] arr = offsets[offsets.length -1];
         RegionPos r1 = arr[arr.length -1];
         if(r1.x < region.x || r1.z < region.z) return;
-        needsUpdate = true;
+        if(needsUpdate) return;
+
+        // mark the changed chunks dirty, in view pixels. The update is in this level's coordinates already. While a stitch is in flight the dirty areas are in its frame,
+        // since they are scrolled along with its buffer by the pans that happened meanwhile when it is swapped in.
+        int originX = stitch != null ? stitch.beginX : begin.getX() >> lod;
+        int originZ = stitch != null ? stitch.beginZ : begin.getZ() >> lod;
+        int x0 = Math.max(0, (region.x << 9) + (update.minChunkX << 4) - originX);
+        int y0 = Math.max(0, (region.z << 9) + (update.minChunkZ << 4) - originZ);
+        int x1 = Math.min(mapWidth, (region.x << 9) + ((update.maxChunkX + 1) << 4) - originX);
+        int y1 = Math.min(mapHeight, (region.z << 9) + ((update.maxChunkZ + 1) << 4) - originZ);
+        dirtyAreas.mark(x0, y0, x1, y1);
+    }
+
+    // Moves the texture content along with a pan, so only the newly exposed strips need to be stitched.
+    // A toroidal texture already has the kept pixels in place, the pan only shows up in the draw UVs.
+    // Returns false if the pan is too large for anything to be kept.
+    private boolean scroll(NativeImage texture, int dx, int dy) {
+        if(Math.abs(dx) >= mapWidth || Math.abs(dy) >= mapHeight) return false;
+        if(!toroidal) {
+            ImageHelper.scroll(texture, dx, dy);
+        }
+
+        dirtyAreas.shift(dx, dy);
+        if(dx > 0) dirtyAreas.mark(0, 0, dx, mapHeight);
+        else if(dx < 0) dirtyAreas.mark(mapWidth + dx, 0, mapWidth, mapHeight);
+        if(dy > 0) dirtyAreas.mark(0, 0, mapWidth, dy);
+        else if(dy < 0) dirtyAreas.mark(0, mapHeight + dy, mapWidth, mapHeight);
+        return true;
     }
 
     private void updateVisibleLayers() {
         visible = mapType.getLayers().stream().filter(l -> !disabled.contains(l) && l.value().shouldRenderInDimension(dimension)).collect(Collectors.toList());
+        plan = new RenderPlan(mapType, visible, tileStorage);
         updateLabels();
         debug.layers = visible.size();
     }
@@ -253,12 +314,19 @@ public class MapRenderer implements AutoCloseable {
 
     public void render(PoseStack stack, MultiBufferSource buffers) {
         if(needsUpdate) updateTexture();
+        if(stitch != null && stitch.isDone()) swapStitch();
+        if(stitch == null && !dirtyAreas.isEmpty()) updateDirtyAreas();
 
         stack.pushPose();
         Matrix4f matrix = stack.last().pose();
 
         RenderHelper.fillRect(buffers, matrix, this.width, this.height, 0xFF333333);
-        RenderHelper.drawQuad(buffers.getBuffer(renderType), matrix, width, height);
+        if(mapTexture != null) {
+            NativeImage texture = mapTexture.getPixels();
+            float u0 = (float) textureOffset(begin.getX() >> lod, texture.getWidth()) / texture.getWidth();
+            float v0 = (float) textureOffset(begin.getZ() >> lod, texture.getHeight()) / texture.getHeight();
+            RenderHelper.drawQuad(buffers.getBuffer(renderType), matrix, width, height, Colors.NO_TINT, u0, u0 + 1, v0, v0 + 1);
+        }
 
         stack.pushPose();
         for(MapLabel l : labels) {
@@ -274,71 +342,198 @@ public class MapRenderer implements AutoCloseable {
         stack.popPose();
     }
 
+    // Starts a full stitch into a back buffer, cancelling the previous one. Large views are stitched in the data
+    // threads over the next frames, small ones right away.
     private void updateTexture() {
-        NativeImage texture = mapTexture.getPixels();
-        if(texture == null) return;
-        int textureH = texture.getHeight();
-        int textureW = texture.getWidth();
-        texture.fillRect(0, 0, textureW, textureH, 0);
+        needsUpdate = false;
+        if(stitch != null) {
+            stitch.abandon();
+            stitch = null;
+        }
+        dirtyAreas.resize(mapWidth, mapHeight);
+        if(mapWidth <= 0 || mapHeight <= 0) return;
 
-        int cornerXOffset = ((begin.getX() % 512) + 512) % 512;
-        int cornerZOffset = ((begin.getZ() % 512) + 512) % 512;
+        stitch = new Stitch();
         int regionCount = offsets.length * offsets[0].length;
-
         renderTimer.begin();
         if(regionCount > 24) {
             debug.stitching = "Parallel";
-            AsyncAwaiter jobs = new AsyncAwaiter(regionCount);
+            Stitch job = stitch;
             for(int regionIndexX = 0; regionIndexX < offsets.length; regionIndexX++) {
                 for(int regionIndexZ = 0; regionIndexZ < offsets[regionIndexX].length; regionIndexZ++) {
-                    generateMapTileAsync(texture, textureW, textureH, cornerXOffset, cornerZOffset, regionIndexX, regionIndexZ, jobs);
+                    final int x = regionIndexX, z = regionIndexZ;
+                    BlazeMapEngine.async().runOnDataThread(() -> job.stitch(x, z));
                 }
             }
-            jobs.await();
         }
         else {
             debug.stitching = "Sequential";
             for(int regionIndexX = 0; regionIndexX < offsets.length; regionIndexX++) {
                 for(int regionIndexZ = 0; regionIndexZ < offsets[regionIndexX].length; regionIndexZ++) {
-                    generateMapTile(texture, textureW, textureH, cornerXOffset, cornerZOffset, regionIndexX, regionIndexZ);
+                    stitch.stitch(regionIndexX, regionIndexZ);
                 }
             }
+            swapStitch();
         }
+    }
+
+    // Replaces the texture with the finished back buffer, catching up with any pan that happened meanwhile.
+    private void swapStitch() {
+        Stitch done = stitch;
+        stitch = null;
         renderTimer.end();
 
+        NativeImage buffer = done.buffer;
+        int dx = done.beginX - (begin.getX() >> lod), dy = done.beginZ - (begin.getZ() >> lod);
+        if(done.lod != lod || buffer.getWidth() != mapWidth || buffer.getHeight() != mapHeight || !scroll(buffer, dx, dy)) {
+            done.abandon();
+            needsUpdate = true;
+            return;
+        }
+
         uploadTimer.begin();
-        mapTexture.upload();
+        NativeImage current = mapTexture == null ? null : mapTexture.getPixels();
+        if(current != null && current.getWidth() == mapWidth && current.getHeight() == mapHeight) {
+            mapTexture.setPixels(buffer);
+            mapTexture.upload();
+        }
+        else {
+            // registering closes the previous texture
+            mapTexture = new DynamicTexture(buffer);
+            Minecraft.getInstance().getTextureManager().register(textureResource, mapTexture);
+        }
         uploadTimer.end();
+        uploadAll = false;
+    }
 
-        needsUpdate = false;
+    // Redraws only the dirty areas of the texture and uploads just those rectangles, unless the whole texture scrolled.
+    private void updateDirtyAreas() {
+        NativeImage texture = mapTexture == null ? null : mapTexture.getPixels();
+        if(texture == null) return;
+
+        int offsetX = textureOffset(begin.getX() >> lod, mapWidth), offsetY = textureOffset(begin.getZ() >> lod, mapHeight);
+        renderTimer.begin();
+        debug.stitching = "Partial";
+        dirtyAreas.forEach((x, y, w, h) -> wrap(x, y, x + w, y + h, offsetX, offsetY, mapWidth, mapHeight,
+            (x0, y0, x1, y1, dx, dy) -> stitchArea(texture, x0, y0, x1, y1, dx, dy)
+        ));
+        renderTimer.end();
+
+        uploadTimer.begin();
+        if(uploadAll) {
+            mapTexture.upload();
+        }
+        else {
+            mapTexture.bind();
+            dirtyAreas.forEach((x, y, w, h) -> wrap(x, y, x + w, y + h, offsetX, offsetY, mapWidth, mapHeight,
+                (x0, y0, x1, y1, dx, dy) -> texture.upload(0, x0 + dx, y0 + dy, x0 + dx, y0 + dy, x1 - x0, y1 - y0, false, false)
+            ));
+        }
+        uploadTimer.end();
+
+        dirtyAreas.clear();
+        uploadAll = false;
     }
 
-    // Run generateMapTile in an engine background thread. Useful for parallelizing massive workloads.
-    private void generateMapTileAsync(NativeImage texture, int textureW, int textureH, int cornerXOffset, int cornerZOffset, int regionIndexX, int regionIndexZ, AsyncAwaiter jobs) {
-        BlazeMapEngine.async().runOnDataThread(() -> {
-            generateMapTile(texture, textureW, textureH, cornerXOffset, cornerZOffset, regionIndexX, regionIndexZ);
-            jobs.done();
-        });
+    // Redraws the view pixels in [x0, x1) x [y0, y1), which sit at (dx, dy) from there in the texture,
+    // from the regions that overlap them.
+    private void stitchArea(NativeImage texture, int x0, int y0, int x1, int y1, int dx, int dy) {
+        texture.fillRect(x0 + dx, y0 + dy, x1 - x0, y1 - y0, 0);
+
+        int cornerXOffset = (begin.getX() >> lod) & 511;
+        int cornerZOffset = (begin.getZ() >> lod) & 511;
+        int lastX = Math.min(offsets.length - 1, (x1 - 1 + cornerXOffset) >> 9);
+        int lastZ = Math.min(offsets[0].length - 1, (y1 - 1 + cornerZOffset) >> 9);
+        for(int regionIndexX = (x0 + cornerXOffset) >> 9; regionIndexX <= lastX; regionIndexX++) {
+            for(int regionIndexZ = (y0 + cornerZOffset) >> 9; regionIndexZ <= lastZ; regionIndexZ++) {
+                int shiftX = (regionIndexX * 512) - cornerXOffset + dx;
+                int shiftY = (regionIndexZ * 512) - cornerZOffset + dy;
+                generateMapTile(texture, plan, offsets[regionIndexX][regionIndexZ], lod, shiftX, shiftY, x0 + dx, y0 + dy, x1 + dx, y1 + dy);
+            }
+        }
     }
 
-    private void generateMapTile(NativeImage texture, int textureW, int textureH, int cornerXOffset, int cornerZOffset, int regionIndexX, int regionIndexZ) {
-        for(BlazeRegistry.Key<Layer> layer : mapType.getLayers()) {
-            if(!isLayerVisible(layer)) continue;
-            final RegionPos region = offsets[regionIndexX][regionIndexZ];
-            tileStorage.consumeTile(layer, region, source -> {
-                for(int x = (region.x * 512) < begin.getX() ? cornerXOffset : 0; x < source.getWidth(); x++) {
-                    int textureX = (regionIndexX * 512) + x - cornerXOffset;
-                    if(textureX < 0 || textureX >= textureW) continue;
+    // Where the view origin, at absolute LOD pixel begin, lands in a toroidal texture of the given size
+    private int textureOffset(int begin, int size) {
+        return toroidal && size > 0 ? Math.floorMod(begin, size) : 0;
+    }
+
+    // Splits the view rect [x0, x1) x [y0, y1) where it wraps around the edges of a texture whose origin is at
+    // (offsetX, offsetY), giving each piece with the offset from view to texture pixels. Without an offset there
+    // is a single piece.
+    private static void wrap(int x0, int y0, int x1, int y1, int offsetX, int offsetY, int width, int height, WrappedRectConsumer consumer) {
+        int splitX = width - offsetX, splitY = height - offsetY; // first view pixels that wrap to the texture start
+        for(int pieceX = 0; pieceX < 2; pieceX++) {
+            int px0 = pieceX == 0 ? x0 : Math.max(x0, splitX);
+            int px1 = pieceX == 0 ? Math.min(x1, splitX) : x1;
+            if(px1 <= px0) continue;
+            for(int pieceY = 0; pieceY < 2; pieceY++) {
+                int py0 = pieceY == 0 ? y0 : Math.max(y0, splitY);
+                int py1 = pieceY == 0 ? Math.min(y1, splitY) : y1;
+                if(py1 <= py0) continue;
+                consumer.accept(px0, py0, px1, py1, pieceX == 0 ? offsetX : offsetX - width, pieceY == 0 ? offsetY : offsetY - height);
+            }
+        }
+    }
 
-                    for(int y = (region.z * 512) < begin.getZ() ? cornerZOffset : 0; y < source.getHeight(); y++) {
-                        int textureY = (regionIndexZ * 512) + y - cornerZOffset;
-                        if(textureY < 0 || textureY >= textureH) continue;
+    @FunctionalInterface
+    private interface WrappedRectConsumer {
+        void accept(int x0, int y0, int x1, int y1, int dx, int dy);
+    }
+
+    // Copies the composite of the planned layers of a region, shifted by (shiftX, shiftY), into the part of the texture
+    // clipped by [clipX0, clipX1) x [clipY0, clipY1).
+    private static void generateMapTile(NativeImage texture, RenderPlan plan, RegionPos region, int lod, int shiftX, int shiftY, int clipX0, int clipY0, int clipX1, int clipY1) {
+        // clip the source region to the part that lands inside the texture
+        int x0 = Math.max(0, clipX0 - shiftX);
+        int y0 = Math.max(0, clipY0 - shiftY);
+        int x1 = Math.min(IRegionTileView.SIZE, clipX1 - shiftX);
+        int y1 = Math.min(IRegionTileView.SIZE, clipY1 - shiftY);
+        if(x1 <= x0 || y1 <= y0) return;
+        COMPOSITES.get(plan, region, lod).copyTo(texture, shiftX, shiftY, x0, y0, x1, y1);
+    }
+
+    /**
+     * A full stitch of the atlas into its own buffer, with a snapshot of the view it was started for.
+     * An abandoned stitch skips the regions it did not reach yet and frees its buffer once the last one is done.
+     */
+    private class Stitch {
+        private final NativeImage buffer = new NativeImage(NativeImage.Format.RGBA, mapWidth, mapHeight, true);
+        private final RegionPos[][] regions = offsets;
+        private final RenderPlan plan = MapRenderer.this.plan;
+        private final int lod = MapRenderer.this.lod;
+        private final int beginX = begin.getX() >> lod, beginZ = begin.getZ() >> lod;
+        private final int offsetX = textureOffset(beginX, mapWidth), offsetY = textureOffset(beginZ, mapHeight);
+        private final AtomicInteger remaining = new AtomicInteger(offsets.length * offsets[0].length);
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile boolean abandoned = false;
+
+        private void stitch(int regionIndexX, int regionIndexZ) {
+            if(!abandoned) {
+                int shiftX = (regionIndexX * 512) - (beginX & 511);
+                int shiftY = (regionIndexZ * 512) - (beginZ & 511);
+                wrap(0, 0, buffer.getWidth(), buffer.getHeight(), offsetX, offsetY, buffer.getWidth(), buffer.getHeight(), (x0, y0, x1, y1, dx, dy) ->
+                    generateMapTile(buffer, plan, regions[regionIndexX][regionIndexZ], lod, shiftX + dx, shiftY + dy, x0 + dx, y0 + dy, x1 + dx, y1 + dy)
+                );
+            }
+            if(remaining.decrementAndGet() == 0 && abandoned) {
+                release();
+            }
+        }
 
-                        int color = Colors.layerBlend(texture.getPixelRGBA(textureX, textureY), source.getPixelRGBA(x, y));
-                        texture.setPixelRGBA(textureX, textureY, color);
-                    }
-                }
-            });
+        private boolean isDone() {
+            return remaining.get() == 0;
+        }
+
+        private void abandon() {
+            abandoned = true;
+            if(isDone()) release();
+        }
+
+        private void release() {
+            if(released.compareAndSet(false, true)) {
+                buffer.close();
+            }
         }
     }
 
@@ -401,6 +596,18 @@ public class MapRenderer implements AutoCloseable {
         return this;
     }
 
+    /**
+     * A toroidal texture wraps around instead of scrolling, so following a moving center only redraws and uploads
+     * the newly exposed strips, so the cost of a pan scales with the movement instead of the view area.
+     * Used by the minimap and the world map.
+     */
+    public MapRenderer setToroidal(boolean toroidal) {
+        if(this.toroidal == toroidal) return this;
+        this.toroidal = toroidal;
+        this.needsUpdate = true;
+        return this;
+    }
+
     public boolean setZoom(double zoom) {
         double prevZoom = this.zoom;
         zoom = Helpers.clamp(minZoom, zoom, maxZoom);
@@ -430,9 +637,25 @@ public class MapRenderer implements AutoCloseable {
     }
 
     public void setCenter(int x, int z) {
+        int oldX = begin.getX() >> lod, oldZ = begin.getZ() >> lod;
+        int oldW = mapWidth, oldH = mapHeight;
         this.center.set(x, 0, z);
         makeOffsets();
-        needsUpdate = true;
+        if(needsUpdate || mapWidth != oldW || mapHeight != oldH) {
+            needsUpdate = true;
+            return;
+        }
+        if(stitch != null) return; // the pan is applied to the back buffer when it is swapped in
+
+        // the content moves opposite to the frustum
+        int dx = oldX - (begin.getX() >> lod), dy = oldZ - (begin.getZ() >> lod);
+        if(dx == 0 && dy == 0) return;
+        NativeImage texture = mapTexture == null ? null : mapTexture.getPixels();
+        if(texture == null || texture.getWidth() != mapWidth || texture.getHeight() != mapHeight || !scroll(texture, dx, dy)) {
+            needsUpdate = true;
+            return;
+        }
+        uploadAll = !toroidal;
     }
 
     public void moveCenter(int x, int z) {
@@ -451,7 +674,13 @@ public class MapRenderer implements AutoCloseable {
 
     @Override
     public void close() {
-        mapTexture.close();
+        if(stitch != null) {
+            stitch.abandon();
+            stitch = null;
+        }
+        if(mapTexture != null) {
+            mapTexture.close();
+        }
         RENDERERS.remove(this);
     }
 
@@ -459,7 +688,7 @@ public class MapRenderer implements AutoCloseable {
         int rw, rh, mw, mh;
         int bx, bz, ex, ez;
         double zoom;
-        int ox, oz;
+        int ox, oz, lod;
         int layers, labels, waypoints;
         String stitching;
     }
@@ -0,0 +1,45 @@
+package com.eerussianguy.blazemap.feature.maps;
+
+import java.util.List;
+
+import com.eerussianguy.blazemap.api.BlazeRegistry.Key;
+import com.eerussianguy.blazemap.api.event.DimensionChangedEvent.DimensionTileStorage;
+import com.eerussianguy.blazemap.api.event.DimensionChangedEvent.LayerTileSource;
+import com.eerussianguy.blazemap.api.mapping.Layer;
+import com.eerussianguy.blazemap.api.mapping.MapType;
+
+/**
+ * What a MapRenderer draws for a map type and its disabled layers, compiled once whenever either changes
+ * so that stitching regions does no collection lookups. Immutable, safe to share with the stitching threads.
+ */
+class RenderPlan {
+    final MapType mapType;
+    final Key<Layer>[] layers; // visible layers, in blending order
+    final LayerTileSource[] sources; // the visible layers resolved against the tile storage, same order
+    final long visibility; // bit N is set if the map type's Nth layer is visible, layers past 63 share the last bit
+
+    @SuppressWarnings("unchecked")
+    RenderPlan(MapType mapType, List<Key<Layer>> visible, DimensionTileStorage storage) {
+        this.mapType = mapType;
+        this.layers = visible.toArray(Key[]::new);
+        this.sources = new LayerTileSource[layers.length];
+        for(int i = 0; i < layers.length; i++) {
+            sources[i] = storage.resolve(layers[i]);
+        }
+
+        long mask = 0;
+        int bit = 0;
+        for(Key<Layer> layer : mapType.getLayers()) {
+            if(visible.contains(layer)) mask |= 1L << Math.min(bit, 63);
+            bit++;
+        }
+        this.visibility = mask;
+    }
+
+    boolean contains(Key<Layer> layer) {
+        for(Key<Layer> visible : layers) {
+            if(visible.equals(layer)) return true;
+        }
+        return false;
+    }
+}
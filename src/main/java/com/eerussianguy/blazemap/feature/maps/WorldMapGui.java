@@ -60,7 +60,7 @@ public class WorldMapGui extends Screen implements IScreenSkipsMinimap, IMapHost
 
     public WorldMapGui() {
         super(EMPTY);
-        mapRenderer = new MapRenderer(-1, -1, Helpers.identifier("dynamic/map/worldmap"), MIN_ZOOM, MAX_ZOOM, true).setProfilers(renderTime, uploadTime);
+        mapRenderer = new MapRenderer(-1, -1, Helpers.identifier("dynamic/map/worldmap"), MIN_ZOOM, MAX_ZOOM, true).setProfilers(renderTime, uploadTime).setToroidal(true);
         synchronizer = new MapConfigSynchronizer(mapRenderer, BlazeMapConfig.CLIENT.worldMap);
         dimension = Minecraft.getInstance().level.dimension();
         mapTypes = BlazeMapAPI.MAPTYPES.keys().stream().map(BlazeRegistry.Key::value).filter(m -> m.shouldRenderInDimension(dimension)).collect(Collectors.toUnmodifiableList());
@@ -213,7 +213,7 @@ public class WorldMapGui extends Screen implements IScreenSkipsMinimap, IMapHost
         int y = 30;
         font.draw(stack, String.format("Renderer Size: %d x %d", debug.rw, debug.rh), 0, y+=12, -1);
         font.draw(stack, String.format("Renderer Zoom: %.3f", debug.zoom), 0, y+=12, -1);
-        font.draw(stack, String.format("Atlas Size: %d x %d", debug.mw, debug.mh), 0, y+=12, -1);
+        font.draw(stack, String.format("Atlas Size: %d x %d (LOD %d)", debug.mw, debug.mh, debug.lod), 0, y+=12, -1);
         font.draw(stack, String.format("Atlas Frustrum: [%d , %d] to [%d , %d]", debug.bx, debug.bz, debug.ex, debug.ez), 0, y+=12, -1);
 
         font.draw(stack, String.format("Region Matrix: %d x %d", debug.ox, debug.oz), 0, y+=18, -1);
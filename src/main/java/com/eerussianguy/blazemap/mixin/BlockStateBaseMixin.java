@@ -0,0 +1,26 @@
+package com.eerussianguy.blazemap.mixin;
+
+import net.minecraft.world.level.block.state.BlockBehaviour;
+
+import com.eerussianguy.blazemap.api.util.BlockStateTable;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+/**
+ * Lets every block state remember its index into the current BlockStateTable, sparing a registry lookup per block.
+ */
+@Mixin(BlockBehaviour.BlockStateBase.class)
+public class BlockStateBaseMixin implements BlockStateTable.Indexed {
+    @Unique
+    private BlockStateTable.Slot blazemap$tableSlot; // immutable, safe to publish without a lock
+
+    @Override
+    public BlockStateTable.Slot blazemap$getTableSlot() {
+        return blazemap$tableSlot;
+    }
+
+    @Override
+    public void blazemap$setTableSlot(BlockStateTable.Slot slot) {
+        this.blazemap$tableSlot = slot;
+    }
+}
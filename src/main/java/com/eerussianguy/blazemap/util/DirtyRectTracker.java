@@ -0,0 +1,115 @@
+package com.eerussianguy.blazemap.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the dirty areas of an image as a short list of rectangles, clipped to the image bounds.
+ * Touching rectangles are merged when their bounds are barely larger than both together, so disjoint strips
+ * (like the two sides of a diagonal pan) stay separate. Past the rectangle limit everything collapses into
+ * a single bounding rectangle. Pure bookkeeping, independent of how the image is stored or uploaded.
+ */
+public class DirtyRectTracker {
+    private final int maxRects;
+    private final List<int[]> rects; // {x0, y0, x1, y1}, exclusive ends
+    private int width, height;
+
+    public DirtyRectTracker(int width, int height, int maxRects) {
+        this.width = width;
+        this.height = height;
+        this.maxRects = maxRects;
+        this.rects = new ArrayList<>(maxRects + 1);
+    }
+
+    /**
+     * Changes the image bounds, forgetting every dirty rectangle.
+     */
+    public void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        rects.clear();
+    }
+
+    public void markAll() {
+        rects.clear();
+        if(width > 0 && height > 0) {
+            rects.add(new int[] {0, 0, width, height});
+        }
+    }
+
+    /**
+     * Marks [x0, x1) x [y0, y1) dirty. Parts outside the image are ignored.
+     */
+    public void mark(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width, x1);
+        y1 = Math.min(height, y1);
+        if(x1 <= x0 || y1 <= y0) return;
+
+        for(int[] rect : rects) {
+            if(x0 > rect[2] || x1 < rect[0] || y0 > rect[3] || y1 < rect[1]) continue;
+            long merged = (long) (Math.max(x1, rect[2]) - Math.min(x0, rect[0])) * (Math.max(y1, rect[3]) - Math.min(y0, rect[1]));
+            if(merged * 4 <= (area(x0, y0, x1, y1) + area(rect[0], rect[1], rect[2], rect[3])) * 5) {
+                rect[0] = Math.min(rect[0], x0);
+                rect[1] = Math.min(rect[1], y0);
+                rect[2] = Math.max(rect[2], x1);
+                rect[3] = Math.max(rect[3], y1);
+                return;
+            }
+        }
+
+        rects.add(new int[] {x0, y0, x1, y1});
+        if(rects.size() > maxRects) {
+            int[] bounds = rects.get(0);
+            for(int[] rect : rects) {
+                bounds[0] = Math.min(bounds[0], rect[0]);
+                bounds[1] = Math.min(bounds[1], rect[1]);
+                bounds[2] = Math.max(bounds[2], rect[2]);
+                bounds[3] = Math.max(bounds[3], rect[3]);
+            }
+            rects.clear();
+            rects.add(bounds);
+        }
+    }
+
+    /**
+     * Moves every dirty rectangle along with image content that moved by (dx, dy), clipping what falls outside.
+     * The uncovered strips are not marked, the caller knows whether they need to be.
+     */
+    public void shift(int dx, int dy) {
+        if(rects.isEmpty()) return;
+        List<int[]> moved = new ArrayList<>(rects);
+        rects.clear();
+        for(int[] rect : moved) {
+            mark(rect[0] + dx, rect[1] + dy, rect[2] + dx, rect[3] + dy);
+        }
+    }
+
+    public boolean isEmpty() {
+        return rects.isEmpty();
+    }
+
+    public int size() {
+        return rects.size();
+    }
+
+    public void clear() {
+        rects.clear();
+    }
+
+    public void forEach(RectConsumer consumer) {
+        for(int[] rect : rects) {
+            consumer.accept(rect[0], rect[1], rect[2] - rect[0], rect[3] - rect[1]);
+        }
+    }
+
+    private static long area(int x0, int y0, int x1, int y1) {
+        return (long) (x1 - x0) * (y1 - y0);
+    }
+
+    @FunctionalInterface
+    public interface RectConsumer {
+        void accept(int x, int y, int width, int height);
+    }
+}
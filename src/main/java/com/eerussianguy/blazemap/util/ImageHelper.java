@@ -0,0 +1,114 @@
+package com.eerussianguy.blazemap.util;
+
+import org.lwjgl.system.MemoryUtil;
+
+import com.mojang.blaze3d.platform.NativeImage;
+
+/**
+ * Bulk pixel transfers for NativeImages, moving whole rows with a single memory copy
+ * instead of going through getPixelRGBA / setPixelRGBA for every pixel.
+ * Bounds are checked once per call, not per pixel. Images not in RGBA format fall back to per-pixel access.
+ */
+public class ImageHelper {
+    private static final int BYTES_PER_PIXEL = 4;
+
+    public static void copyRect(NativeImage src, int srcX, int srcY, NativeImage dst, int dstX, int dstY, int width, int height) {
+        checkRect(src, srcX, srcY, width, height);
+        checkRect(dst, dstX, dstY, width, height);
+        if(!isBulk(src) || !isBulk(dst)) {
+            for(int row = 0; row < height; row++) {
+                for(int col = 0; col < width; col++) {
+                    dst.setPixelRGBA(dstX + col, dstY + row, src.getPixelRGBA(srcX + col, srcY + row));
+                }
+            }
+            return;
+        }
+        long rowBytes = (long) width * BYTES_PER_PIXEL;
+        for(int row = 0; row < height; row++) {
+            MemoryUtil.memCopy(address(src, srcX, srcY + row), address(dst, dstX, dstY + row), rowBytes);
+        }
+    }
+
+    /**
+     * Reads length pixels of row y, starting at x, into the array. Pixels are in NativeImage's ABGR order.
+     */
+    public static void readRow(NativeImage image, int x, int y, int[] pixels, int offset, int length) {
+        checkRect(image, x, y, length, 1);
+        checkArray(pixels, offset, length);
+        if(!isBulk(image)) {
+            for(int i = 0; i < length; i++) {
+                pixels[offset + i] = image.getPixelRGBA(x + i, y);
+            }
+            return;
+        }
+        MemoryUtil.memIntBuffer(address(image, x, y), length).get(pixels, offset, length);
+    }
+
+    /**
+     * Writes length pixels from the array into row y, starting at x. Pixels are in NativeImage's ABGR order.
+     */
+    public static void writeRow(NativeImage image, int x, int y, int[] pixels, int offset, int length) {
+        checkRect(image, x, y, length, 1);
+        checkArray(pixels, offset, length);
+        if(!isBulk(image)) {
+            for(int i = 0; i < length; i++) {
+                image.setPixelRGBA(x + i, y, pixels[offset + i]);
+            }
+            return;
+        }
+        MemoryUtil.memIntBuffer(address(image, x, y), length).put(pixels, offset, length);
+    }
+
+    /**
+     * Moves the whole image content by (dx, dy) pixels, the uncovered area becomes transparent.
+     * Rows are moved in the order that never overwrites a row before it was read.
+     */
+    public static void scroll(NativeImage image, int dx, int dy) {
+        int width = image.getWidth(), height = image.getHeight();
+        if(Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            image.fillRect(0, 0, width, height, 0);
+            return;
+        }
+
+        int length = width - Math.abs(dx);
+        int srcX = Math.max(0, -dx), dstX = Math.max(0, dx);
+        int[] row = new int[length];
+        if(dy > 0) {
+            for(int y = height - 1 - dy; y >= 0; y--) {
+                readRow(image, srcX, y, row, 0, length);
+                writeRow(image, dstX, y + dy, row, 0, length);
+            }
+        }
+        else {
+            for(int y = -dy; y < height; y++) {
+                readRow(image, srcX, y, row, 0, length);
+                writeRow(image, dstX, y + dy, row, 0, length);
+            }
+        }
+
+        if(dy > 0) image.fillRect(0, 0, width, dy, 0);
+        else if(dy < 0) image.fillRect(0, height + dy, width, -dy, 0);
+        if(dx > 0) image.fillRect(0, 0, dx, height, 0);
+        else if(dx < 0) image.fillRect(width + dx, 0, -dx, height, 0);
+    }
+
+    private static long address(NativeImage image, int x, int y) {
+        return image.pixels + ((long) y * image.getWidth() + x) * BYTES_PER_PIXEL;
+    }
+
+    private static boolean isBulk(NativeImage image) {
+        return image.format() == NativeImage.Format.RGBA;
+    }
+
+    private static void checkRect(NativeImage image, int x, int y, int width, int height) {
+        if(image.pixels == 0L)
+            throw new IllegalStateException("Image is not allocated");
+        if(x < 0 || y < 0 || width < 0 || height < 0 || x + width > image.getWidth() || y + height > image.getHeight())
+            throw new IllegalArgumentException(String.format("Rect (%d, %d) %dx%d out of bounds for %dx%d image", x, y, width, height, image.getWidth(), image.getHeight()));
+    }
+
+    private static void checkArray(int[] pixels, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > pixels.length)
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") out of bounds for length " + pixels.length);
+    }
+}
@@ -0,0 +1,163 @@
+package com.eerussianguy.blazemap.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Minimal implementation of the LZ4 block format: fast greedy compression with a 4096 entry hash table
+ * and bounds-checked decompression. Blocks carry no framing, callers must store the lengths themselves.
+ * Each thread reuses its hash table across calls, entries from previous calls are told apart by a running base.
+ */
+public class Lz4 {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 12;
+    private static final ThreadLocal<HashTable> TABLES = ThreadLocal.withInitial(HashTable::new);
+
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @return the number of bytes written to dst, which must hold at least maxCompressedLength(length) bytes.
+     */
+    public static int compress(byte[] src, int length, byte[] dst) {
+        HashTable hashes = TABLES.get();
+        int[] table = hashes.slots;
+        int base = hashes.begin(length);
+        int anchor = 0, ip = 0, op = 0;
+        int limit = length - MF_LIMIT;
+        int matchLimit = length - LAST_LITERALS;
+
+        while(ip < limit) {
+            int sequence = readInt(src, ip);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[hash] - base; // negative if empty or left by a previous call
+            table[hash] = base + ip;
+
+            if(ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while(ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+
+            op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+
+        return writeSequence(src, anchor, length - anchor, dst, op, 0, 0);
+    }
+
+    /**
+     * Decompresses a block that must expand to exactly length bytes.
+     *
+     * @throws IOException if the block is malformed.
+     */
+    public static void decompress(byte[] src, int offset, int srcLength, byte[] dst, int length) throws IOException {
+        int ip = offset, op = 0;
+        int end = offset + srcLength;
+        try {
+            while(true) {
+                int token = src[ip++] & 0xFF;
+
+                int literals = token >>> 4;
+                if(literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    }
+                    while(b == 255);
+                }
+                if(ip + literals > end || op + literals > length) throw new IOException("LZ4 literals out of bounds");
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if(ip == end) break;
+
+                int matchOffset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                if(matchOffset == 0 || matchOffset > op) throw new IOException("LZ4 match offset out of bounds");
+                int matchLength = token & 0x0F;
+                if(matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    }
+                    while(b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if(op + matchLength > length) throw new IOException("LZ4 match out of bounds");
+
+                // matches may overlap their own output, so copy forward byte by byte
+                int ref = op - matchOffset;
+                for(int i = 0; i < matchLength; i++) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        }
+        catch(ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated LZ4 block", e);
+        }
+        if(op != length) throw new IOException("LZ4 block expanded to " + op + " bytes, expected " + length);
+    }
+
+    // A match length of 0 writes a literal-only sequence, which must be the last one.
+    private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op, int matchOffset, int matchLength) {
+        int tokenPos = op++;
+        int token = Math.min(literals, 15) << 4;
+        if(literals >= 15) {
+            op = writeLength(dst, op, literals - 15);
+        }
+        System.arraycopy(src, literalStart, dst, op, literals);
+        op += literals;
+
+        if(matchLength > 0) {
+            dst[op++] = (byte) matchOffset;
+            dst[op++] = (byte) (matchOffset >>> 8);
+            int length = matchLength - MIN_MATCH;
+            token |= Math.min(length, 15);
+            if(length >= 15) {
+                op = writeLength(dst, op, length - 15);
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while(length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    // Positions are stored offset by a base that grows past every position of the previous call
+    private static class HashTable {
+        private final int[] slots = new int[1 << HASH_BITS];
+        private int next = 1;
+
+        private int begin(int length) {
+            if(next > Integer.MAX_VALUE - length - 1) {
+                Arrays.fill(slots, 0);
+                next = 1;
+            }
+            int base = next;
+            next += length + 1;
+            return base;
+        }
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -130,6 +130,10 @@ public abstract class Profiler {
             update(1);
         }
 
+        public void hit(int count) {
+            update(count);
+        }
+
         public void ping() {
             update(0);
         }
@@ -0,0 +1,86 @@
+package com.eerussianguy.blazemap.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirtyRectTrackerTest {
+    @Test
+    void clipsToTheImageBounds() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 8);
+        tracker.mark(-10, -10, 20, 30);
+        tracker.mark(90, 90, 120, 120);
+        tracker.mark(100, 0, 150, 50); // entirely outside
+        assertRects(tracker, new int[] {0, 0, 20, 30}, new int[] {90, 90, 10, 10});
+    }
+
+    @Test
+    void ignoresEmptyRects() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 8);
+        tracker.mark(10, 10, 10, 20);
+        tracker.mark(10, 20, 20, 10);
+        assertTrue(tracker.isEmpty());
+    }
+
+    @Test
+    void mergesTouchingRects() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 8);
+        tracker.mark(0, 0, 10, 10);
+        tracker.mark(10, 0, 20, 10);
+        tracker.mark(0, 10, 20, 20);
+        assertRects(tracker, new int[] {0, 0, 20, 20});
+    }
+
+    @Test
+    void keepsTheStripsOfADiagonalPanApart() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 8);
+        tracker.mark(0, 0, 10, 100);
+        tracker.mark(0, 0, 100, 10);
+        assertRects(tracker, new int[] {0, 0, 10, 100}, new int[] {0, 0, 100, 10});
+    }
+
+    @Test
+    void collapsesIntoTheBoundsPastTheLimit() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 2);
+        tracker.mark(0, 0, 5, 5);
+        tracker.mark(20, 20, 25, 25);
+        assertEquals(2, tracker.size());
+        tracker.mark(50, 60, 55, 65);
+        assertRects(tracker, new int[] {0, 0, 55, 65});
+    }
+
+    @Test
+    void shiftClipsWhatMovesOutside() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 8);
+        tracker.mark(0, 0, 10, 10);
+        tracker.mark(50, 50, 60, 60);
+        tracker.shift(-5, 45);
+        assertRects(tracker, new int[] {0, 45, 5, 10}, new int[] {45, 95, 10, 5});
+
+        tracker.shift(0, 100);
+        assertTrue(tracker.isEmpty());
+    }
+
+    @Test
+    void resizeForgetsEverything() {
+        DirtyRectTracker tracker = new DirtyRectTracker(100, 100, 8);
+        tracker.mark(0, 0, 10, 10);
+        tracker.resize(50, 50);
+        assertTrue(tracker.isEmpty());
+        tracker.markAll();
+        assertRects(tracker, new int[] {0, 0, 50, 50});
+    }
+
+    // Expected rects are {x, y, width, height}, in marking order
+    private static void assertRects(DirtyRectTracker tracker, int[]... expected) {
+        List<int[]> actual = new ArrayList<>();
+        tracker.forEach((x, y, w, h) -> actual.add(new int[] {x, y, w, h}));
+        assertEquals(expected.length, actual.size(), "rect count");
+        for(int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual.get(i), "rect " + i);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.eerussianguy.blazemap.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Lz4Test {
+    private static final int CHUNK_BYTES = 256 * 4;
+
+    @Test
+    void roundTripsEmptyInput() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    void roundTripsShortInputs() throws IOException {
+        for(int length = 1; length <= 32; length++) {
+            assertRoundTrip(random(length, 1));
+        }
+    }
+
+    @Test
+    void roundTripsAndShrinksUniformChunks() throws IOException {
+        byte[] zeros = new byte[CHUNK_BYTES];
+        assertTrue(assertRoundTrip(zeros) < 32);
+
+        byte[] pixels = pixels(0xFF336699, 0xFF336699);
+        assertTrue(assertRoundTrip(pixels) < 64);
+    }
+
+    @Test
+    void roundTripsMapLikeChunks() throws IOException {
+        Random random = new Random(7);
+        byte[] data = new byte[CHUNK_BYTES];
+        int color = 0xFF20A040;
+        for(int i = 0; i < data.length; i += 4) {
+            if(random.nextInt(8) == 0) color = 0xFF000000 | random.nextInt(0xFFFFFF);
+            writeInt(data, i, color);
+        }
+        assertTrue(assertRoundTrip(data) < CHUNK_BYTES);
+    }
+
+    @Test
+    void roundTripsIncompressibleData() throws IOException {
+        byte[] data = random(CHUNK_BYTES, 3);
+        assertTrue(assertRoundTrip(data) <= Lz4.maxCompressedLength(CHUNK_BYTES));
+    }
+
+    @Test
+    void roundTripsLongRunsAndLiterals() throws IOException {
+        byte[] data = new byte[70_000];
+        System.arraycopy(random(1000, 5), 0, data, 0, 1000); // literal run longer than 255
+        System.arraycopy(random(1000, 5), 0, data, 69_000, 1000); // repeats past the 65535 byte window
+        assertRoundTrip(data);
+    }
+
+    @Test
+    void reusesTheHashTableAcrossCalls() throws IOException {
+        // the same thread compresses many chunks in a row, entries from earlier inputs must never match
+        for(int seed = 0; seed < 200; seed++) {
+            assertRoundTrip(seed % 2 == 0 ? random(CHUNK_BYTES, seed) : pixels(seed, ~seed));
+        }
+    }
+
+    @Test
+    void rejectsTruncatedBlocks() {
+        byte[] data = pixels(0xFF112233, 0xFF445566);
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+        int length = Lz4.compress(data, data.length, compressed);
+        for(int cut = 1; cut < length; cut++) {
+            int truncated = cut;
+            assertThrows(IOException.class, () -> Lz4.decompress(compressed, 0, truncated, new byte[data.length], data.length));
+        }
+    }
+
+    @Test
+    void rejectsTheWrongExpandedLength() {
+        byte[] data = random(CHUNK_BYTES, 11);
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+        int length = Lz4.compress(data, data.length, compressed);
+        assertThrows(IOException.class, () -> Lz4.decompress(compressed, 0, length, new byte[data.length * 2], data.length * 2));
+        assertThrows(IOException.class, () -> Lz4.decompress(compressed, 0, length, new byte[data.length], data.length - 1));
+    }
+
+    @Test
+    void decompressesFromAnOffset() throws IOException {
+        byte[] data = pixels(0xFF010203, 0xFF040506);
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length) + 10];
+        int length = Lz4.compress(data, data.length, compressed);
+        byte[] shifted = new byte[length + 10];
+        System.arraycopy(compressed, 0, shifted, 10, length);
+        byte[] out = new byte[data.length];
+        Lz4.decompress(shifted, 10, length, out, data.length);
+        assertArrayEquals(data, out);
+    }
+
+    // Returns the compressed length
+    private static int assertRoundTrip(byte[] data) throws IOException {
+        byte[] compressed = new byte[Lz4.maxCompressedLength(data.length)];
+        int length = Lz4.compress(data, data.length, compressed);
+        assertTrue(length <= compressed.length);
+        byte[] out = new byte[data.length];
+        Lz4.decompress(compressed, 0, length, out, data.length);
+        assertArrayEquals(data, out);
+        return length;
+    }
+
+    // A chunk of two colors in alternating rows
+    private static byte[] pixels(int even, int odd) {
+        byte[] data = new byte[CHUNK_BYTES];
+        for(int i = 0; i < 256; i++) {
+            writeInt(data, i * 4, ((i >> 4) & 1) == 0 ? even : odd);
+        }
+        return data;
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static void writeInt(byte[] data, int i, int value) {
+        data[i] = (byte) value;
+        data[i + 1] = (byte) (value >>> 8);
+        data[i + 2] = (byte) (value >>> 16);
+        data[i + 3] = (byte) (value >>> 24);
+    }
+}